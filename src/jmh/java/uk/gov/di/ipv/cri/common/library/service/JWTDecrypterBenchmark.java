@@ -0,0 +1,147 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import com.nimbusds.jose.EncryptionMethod;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.JWEHeader;
+import com.nimbusds.jose.JWEObject;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSAEncrypter;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.KmsClient;
+import software.amazon.awssdk.services.kms.model.DecryptRequest;
+import software.amazon.awssdk.services.kms.model.DecryptResponse;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link JWTDecrypter#decrypt} on an RSA-OAEP-256 / A256GCM encrypted JAR.
+ *
+ * <p>KMS is replaced with an in-memory client that unwraps the content encryption key locally,
+ * so the figures exclude the KMS round trip and cover parsing, key unwrap and content decryption.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JWTDecrypterBenchmark {
+    private static final String KEY_ID = "benchmark-key";
+
+    private JWTDecrypter jwtDecrypter;
+    private String serialisedJweObject;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        // Key rotation disabled, so the legacy key route is taken and the EventProbe is unused
+        jwtDecrypter =
+                new JWTDecrypter(
+                        new KMSRSADecrypter(
+                                new InMemoryKmsClient(keyPair.getPrivate()),
+                                null,
+                                KEY_ID,
+                                false,
+                                false));
+
+        Instant now = Instant.now();
+        SignedJWT signedJWT =
+                new SignedJWT(
+                        new JWSHeader.Builder(JWSAlgorithm.ES256).build(),
+                        new JWTClaimsSet.Builder()
+                                .issuer("ipv-core-stub")
+                                .subject("urn:uuid:" + UUID.randomUUID())
+                                .audience("https://review-a.dev.account.gov.uk")
+                                .notBeforeTime(Date.from(now))
+                                .expirationTime(Date.from(now.plus(1, ChronoUnit.HOURS)))
+                                .claim("state", UUID.randomUUID().toString())
+                                .claim("govuk_signin_journey_id", UUID.randomUUID().toString())
+                                .build());
+        signedJWT.sign(new ECDSASigner(new ECKeyGenerator(Curve.P_256).generate()));
+
+        JWEObject jweObject =
+                new JWEObject(
+                        new JWEHeader.Builder(JWEAlgorithm.RSA_OAEP_256, EncryptionMethod.A256GCM)
+                                .contentType("JWT")
+                                .build(),
+                        new Payload(signedJWT));
+        jweObject.encrypt(new RSAEncrypter((RSAPublicKey) keyPair.getPublic()));
+        serialisedJweObject = jweObject.serialize();
+    }
+
+    @Benchmark
+    public SignedJWT decrypt() throws Exception {
+        return jwtDecrypter.decrypt(serialisedJweObject);
+    }
+
+    private static final class InMemoryKmsClient implements KmsClient {
+        private static final OAEPParameterSpec RSAES_OAEP_SHA_256 =
+                new OAEPParameterSpec(
+                        "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+
+        private final PrivateKey privateKey;
+
+        private InMemoryKmsClient(PrivateKey privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public DecryptResponse decrypt(DecryptRequest decryptRequest) {
+            try {
+                Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
+                cipher.init(Cipher.DECRYPT_MODE, privateKey, RSAES_OAEP_SHA_256);
+                byte[] plaintext = cipher.doFinal(decryptRequest.ciphertextBlob().asByteArray());
+                return DecryptResponse.builder()
+                        .keyId(decryptRequest.keyId())
+                        .plaintext(SdkBytes.fromByteArray(plaintext))
+                        .build();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
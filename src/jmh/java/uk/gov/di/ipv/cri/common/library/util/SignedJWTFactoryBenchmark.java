@@ -0,0 +1,113 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the three {@link SignedJWTFactory#createSignedJwt} overloads.
+ *
+ * <p>An in-memory {@link ECDSASigner} stands in for KMS so that only the library's own header,
+ * serialisation and encoding work is measured alongside the local ES256 signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignedJWTFactoryBenchmark {
+    private static final String ISSUER = "https://review-a.dev.account.gov.uk";
+    private static final String SIGNING_KEY_ID = "5c9f7bc5-9a6a-4d39-8a53-7e3f0c1d2e4f";
+
+    private SignedJWTFactory signedJWTFactory;
+    private JWTClaimsSet claimsSet;
+    private String serialisedClaimsSet;
+
+    @Setup
+    public void setUp() throws Exception {
+        signedJWTFactory =
+                new SignedJWTFactory(new ECDSASigner(new ECKeyGenerator(Curve.P_256).generate()));
+
+        Map<String, Object> credentialSubject =
+                Map.of(
+                        "name",
+                        List.of(
+                                Map.of(
+                                        "nameParts",
+                                        List.of(
+                                                Map.of("type", "GivenName", "value", "KENNETH"),
+                                                Map.of(
+                                                        "type",
+                                                        "FamilyName",
+                                                        "value",
+                                                        "DECERQUEIRA")))),
+                        "birthDate",
+                        List.of(Map.of("value", "1965-07-08")));
+        Map<String, Object> evidence =
+                Map.of(
+                        "type",
+                        "IdentityCheck",
+                        "txn",
+                        UUID.randomUUID().toString(),
+                        "strengthScore",
+                        2,
+                        "validityScore",
+                        2);
+
+        Instant now = Instant.now();
+        claimsSet =
+                new JWTClaimsSet.Builder()
+                        .issuer(ISSUER)
+                        .subject("urn:fdc:gov.uk:2022:" + UUID.randomUUID())
+                        .notBeforeTime(Date.from(now))
+                        .expirationTime(Date.from(now.plus(1, ChronoUnit.HOURS)))
+                        .jwtID("urn:uuid:" + UUID.randomUUID())
+                        .claim(
+                                "vc",
+                                Map.of(
+                                        "type",
+                                        List.of("VerifiableCredential", "IdentityCheckCredential"),
+                                        "credentialSubject",
+                                        credentialSubject,
+                                        "evidence",
+                                        List.of(evidence)))
+                        .build();
+        serialisedClaimsSet = claimsSet.toString();
+    }
+
+    @Benchmark
+    public SignedJWT createSignedJwtFromClaimsSet() throws Exception {
+        return signedJWTFactory.createSignedJwt(claimsSet);
+    }
+
+    @Benchmark
+    public SignedJWT createSignedJwtWithKeyId() throws Exception {
+        return signedJWTFactory.createSignedJwt(claimsSet, ISSUER, SIGNING_KEY_ID);
+    }
+
+    @Benchmark
+    public SignedJWT createSignedJwtFromString() throws Exception {
+        return signedJWTFactory.createSignedJwt(serialisedClaimsSet);
+    }
+}
@@ -13,6 +13,8 @@ public class JWKS {
     private long lastUpdated;
     private long cacheControl;
     private int maxAgeFromCacheControlHeader;
+    private String etag;
+    private String lastModified;
 
     public JWKS() {
         maxAgeFromCacheControlHeader = 0;
@@ -49,4 +51,20 @@ public class JWKS {
     public void setCacheControl(long cacheControl) {
         this.cacheControl = cacheControl;
     }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
 }
@@ -0,0 +1,8 @@
+package uk.gov.di.ipv.cri.common.library.exception;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
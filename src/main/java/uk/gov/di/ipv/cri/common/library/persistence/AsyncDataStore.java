@@ -0,0 +1,237 @@
+package uk.gov.di.ipv.cri.common.library.persistence;
+
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import uk.gov.di.ipv.cri.common.library.util.retry.RetryConfig;
+import uk.gov.di.ipv.cri.common.library.util.retry.RetryManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of {@link DataStore}, built on a {@link
+ * DynamoDbEnhancedAsyncClient}.
+ *
+ * <p>Each method returns as soon as its request is sent, so independent reads can be started
+ * together and joined, rather than waiting for one before sending the next. Failures, including
+ * {@link software.amazon.awssdk.services.dynamodb.model.DynamoDbException}, complete the returned
+ * future exceptionally rather than being thrown.
+ */
+public class AsyncDataStore<T> {
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+    // Only unprocessed items are resent here, as the SDK retries failed requests itself
+    private static final RetryConfig UNPROCESSED_ITEMS_RETRY_CONFIG =
+            new RetryConfig.Builder()
+                    .maxAttempts(5)
+                    .delayBetweenAttempts(50)
+                    .exponentiallyRetry(true)
+                    .jitter(RetryConfig.Jitter.FULL)
+                    .abortOn(e -> !(e instanceof UnprocessedItemsException))
+                    .build();
+
+    private final DynamoDbAsyncTable<T> table;
+    private final Class<T> typeParameterClass;
+    private final DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient;
+
+    public AsyncDataStore(
+            String tableName,
+            Class<T> typeParameterClass,
+            DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient) {
+        this.table =
+                dynamoDbEnhancedAsyncClient.table(
+                        tableName, TableSchema.fromBean(typeParameterClass));
+        this.typeParameterClass = typeParameterClass;
+        this.dynamoDbEnhancedAsyncClient = dynamoDbEnhancedAsyncClient;
+    }
+
+    public CompletableFuture<Void> create(T item) {
+        return this.table.putItem(item);
+    }
+
+    /**
+     * Writes the items using batch writes of up to 25 items, sent together. Items the service did
+     * not process, usually because of throttling, are sent again after a backoff. The returned
+     * future completes exceptionally if some are still unprocessed after five attempts.
+     */
+    public CompletableFuture<Void> createItems(List<T> items) {
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += MAX_BATCH_WRITE_ITEMS) {
+            batches.add(
+                    batchWriteItems(
+                            items.subList(
+                                    i, Math.min(i + MAX_BATCH_WRITE_ITEMS, items.size()))));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public CompletableFuture<T> getItem(String partitionValue, String sortValue) {
+        return this.table.getItem(
+                Key.builder().partitionValue(partitionValue).sortValue(sortValue).build());
+    }
+
+    public CompletableFuture<T> getItem(String partitionValue) {
+        return this.table.getItem(Key.builder().partitionValue(partitionValue).build());
+    }
+
+    /** Reads the item with a strongly consistent read, so a write made just before is seen. */
+    public CompletableFuture<T> getItemWithConsistentRead(String partitionValue) {
+        return this.table.getItem(
+                GetItemEnhancedRequest.builder()
+                        .key(Key.builder().partitionValue(partitionValue).build())
+                        .consistentRead(true)
+                        .build());
+    }
+
+    /**
+     * Reads the items with the given partition values using batch gets of up to 100 keys, sent
+     * together. Repeated values are read once, items that do not exist are left out, and the items
+     * are not returned in any particular order.
+     */
+    public CompletableFuture<List<T>> getItemsByPartitionValues(List<String> partitionValues) {
+        // BatchGetItem rejects a request with repeated keys or more than 100 keys
+        List<String> distinctValues = new ArrayList<>(new LinkedHashSet<>(partitionValues));
+        List<CompletableFuture<List<T>>> batches = new ArrayList<>();
+        for (int i = 0; i < distinctValues.size(); i += MAX_BATCH_GET_KEYS) {
+            batches.add(
+                    batchGetItems(
+                            distinctValues.subList(
+                                    i, Math.min(i + MAX_BATCH_GET_KEYS, distinctValues.size()))));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .thenApply(
+                        ignored ->
+                                batches.stream()
+                                        .flatMap(batch -> batch.join().stream())
+                                        .toList());
+    }
+
+    public CompletableFuture<List<T>> getItems(String partitionValue) {
+        return collectItems(
+                this.table.query(
+                        QueryConditional.keyEqualTo(
+                                Key.builder().partitionValue(partitionValue).build())));
+    }
+
+    public CompletableFuture<List<T>> getItemByIndex(String indexName, String value) {
+        DynamoDbAsyncIndex<T> index = this.table.index(indexName);
+        var attVal = AttributeValue.builder().s(value).build();
+        var queryConditional =
+                QueryConditional.keyEqualTo(Key.builder().partitionValue(attVal).build());
+        var queryEnhancedRequest =
+                QueryEnhancedRequest.builder().queryConditional(queryConditional).build();
+
+        return collectItems(index.query(queryEnhancedRequest));
+    }
+
+    public CompletableFuture<List<T>> getItemsByAttribute(
+            String attributeName, String attributeValue) {
+        AttributeValue expressionValue = AttributeValue.builder().s(attributeValue).build();
+        Expression attributeFilterExpression =
+                Expression.builder()
+                        .expression("#a = :b")
+                        .putExpressionName("#a", attributeName)
+                        .putExpressionValue(":b", expressionValue)
+                        .build();
+
+        return collectItems(this.table.scan(r -> r.filterExpression(attributeFilterExpression)));
+    }
+
+    public CompletableFuture<T> update(T item) {
+        return this.table.updateItem(item);
+    }
+
+    public CompletableFuture<T> delete(String partitionValue, String sortValue) {
+        return this.table.deleteItem(
+                Key.builder().partitionValue(partitionValue).sortValue(sortValue).build());
+    }
+
+    public CompletableFuture<T> delete(String partitionValue) {
+        return this.table.deleteItem(Key.builder().partitionValue(partitionValue).build());
+    }
+
+    private CompletableFuture<List<T>> batchGetItems(List<String> partitionValues) {
+        ReadBatch.Builder<T> readBatchBuilder =
+                ReadBatch.builder(this.typeParameterClass).mappedTableResource(this.table);
+        for (String partitionValue : partitionValues) {
+            readBatchBuilder.addGetItem(Key.builder().partitionValue(partitionValue).build());
+        }
+        // Each page after the first is the enhanced client resending the keys left unprocessed
+        // by the page before, so collecting every page reads every key
+        SdkPublisher<BatchGetResultPage> pages =
+                this.dynamoDbEnhancedAsyncClient.batchGetItem(
+                        BatchGetItemEnhancedRequest.builder()
+                                .readBatches(readBatchBuilder.build())
+                                .build());
+
+        List<T> items = new ArrayList<>();
+        return pages.subscribe(page -> items.addAll(page.resultsForTable(this.table)))
+                .thenApply(ignored -> items);
+    }
+
+    private CompletableFuture<Void> batchWriteItems(List<T> items) {
+        // Each attempt sends only the items left unprocessed by the attempt before
+        List<T> pendingItems = new ArrayList<>(items);
+        return RetryManager.executeAsync(
+                UNPROCESSED_ITEMS_RETRY_CONFIG,
+                () ->
+                        persistBatch(createPutItemsWriteBatch(pendingItems))
+                                .thenApply(
+                                        batchWriteResult -> {
+                                            List<T> unprocessedItems =
+                                                    batchWriteResult.unprocessedPutItemsForTable(
+                                                            this.table);
+                                            if (!unprocessedItems.isEmpty()) {
+                                                pendingItems.clear();
+                                                pendingItems.addAll(unprocessedItems);
+                                                throw new UnprocessedItemsException(
+                                                        unprocessedItems.size());
+                                            }
+                                            return null;
+                                        }));
+    }
+
+    private CompletableFuture<List<T>> collectItems(SdkPublisher<Page<T>> pages) {
+        // Pages are delivered one at a time, so the list needs no synchronisation
+        List<T> items = new ArrayList<>();
+        return pages.subscribe(page -> items.addAll(page.items())).thenApply(ignored -> items);
+    }
+
+    private WriteBatch createPutItemsWriteBatch(List<T> items) {
+        WriteBatch.Builder<T> builder =
+                WriteBatch.builder(this.typeParameterClass).mappedTableResource(this.table);
+        for (T item : items) {
+            builder.addPutItem(r -> r.item(item).build());
+        }
+        return builder.build();
+    }
+
+    private CompletableFuture<BatchWriteResult> persistBatch(WriteBatch writeBatch) {
+        return this.dynamoDbEnhancedAsyncClient.batchWriteItem(
+                BatchWriteItemEnhancedRequest.builder().writeBatches(writeBatch).build());
+    }
+
+    private static final class UnprocessedItemsException extends RuntimeException {
+        private UnprocessedItemsException(int unprocessedItemCount) {
+            super(unprocessedItemCount + " items were not processed in a batch write");
+        }
+    }
+}
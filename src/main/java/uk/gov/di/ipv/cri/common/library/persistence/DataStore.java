@@ -8,6 +8,7 @@ import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteResult;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
@@ -72,6 +73,15 @@ public class DataStore<T> {
         return getItemByKey(Key.builder().partitionValue(partitionValue).build());
     }
 
+    /** Reads the item with a strongly consistent read, so a write made just before is seen. */
+    public T getItemWithConsistentRead(String partitionValue) {
+        return this.table.getItem(
+                GetItemEnhancedRequest.builder()
+                        .key(Key.builder().partitionValue(partitionValue).build())
+                        .consistentRead(true)
+                        .build());
+    }
+
     public List<T> getItems(String partitionValue) {
         return this.table
                 .query(
@@ -37,12 +37,31 @@ public class AccessTokenService {
     public static final String CLIENT_ASSERTION = "client_assertion";
     public static final String AUTHORISATION_CODE = "authorization_code";
     public static final String REDIRECT_URI = "redirect_uri";
+    private static final String MAC_ACCESS_TOKEN = "ENV_VAR_FEATURE_FLAG_MAC_ACCESS_TOKEN";
     private final ConfigurationService configurationService;
     private final JWTVerifier jwtVerifier;
+    private final MacAccessTokenService macAccessTokenService;
 
     public AccessTokenService(ConfigurationService configurationService, JWTVerifier jwtVerifier) {
+        this(
+                configurationService,
+                jwtVerifier,
+                Boolean.parseBoolean(System.getenv(MAC_ACCESS_TOKEN))
+                        ? new MacAccessTokenService(configurationService)
+                        : null);
+    }
+
+    /**
+     * @param macAccessTokenService when set, {@link #createToken(TokenRequest, SessionItem)} issues
+     *     tokens that carry the session id, so the session can be read by its key
+     */
+    public AccessTokenService(
+            ConfigurationService configurationService,
+            JWTVerifier jwtVerifier,
+            MacAccessTokenService macAccessTokenService) {
         this.configurationService = configurationService;
         this.jwtVerifier = jwtVerifier;
+        this.macAccessTokenService = macAccessTokenService;
     }
 
     @ExcludeFromGeneratedCoverageReport
@@ -63,6 +82,20 @@ public class AccessTokenService {
         return new AccessTokenResponse(new Tokens(accessToken, null)).toSuccessResponse();
     }
 
+    public AccessTokenResponse createToken(TokenRequest tokenRequest, SessionItem sessionItem) {
+        if (macAccessTokenService == null) {
+            return createToken(tokenRequest);
+        }
+        AccessToken accessToken =
+                new BearerAccessToken(
+                        macAccessTokenService.createToken(
+                                sessionItem.getSessionId(),
+                                configurationService.getBearerAccessTokenExpirationEpoch()),
+                        configurationService.getBearerAccessTokenTtl(),
+                        tokenRequest.getScope());
+        return new AccessTokenResponse(new Tokens(accessToken, null)).toSuccessResponse();
+    }
+
     public void updateSessionAccessToken(
             SessionItem sessionItem, AccessTokenResponse tokenResponse) {
         // Set the access token
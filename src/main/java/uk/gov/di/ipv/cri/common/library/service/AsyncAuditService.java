@@ -0,0 +1,110 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.utils.StringUtils;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEventContext;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEventType;
+import uk.gov.di.ipv.cri.common.library.exception.SqsException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends audit events in the same way as {@link AuditService}, but without waiting for SQS.
+ *
+ * <p>Each returned future completes once the event has been accepted by the queue. Failures
+ * match the exceptions {@link AuditService} throws: the future completes exceptionally with an
+ * {@link SqsException} if the event cannot be serialised, or with the SDK's exception, such as
+ * {@link software.amazon.awssdk.services.sqs.model.SqsException}, if SQS cannot be sent to.
+ * Handlers should wait on the futures before the invocation ends.
+ */
+public class AsyncAuditService {
+    private final SqsAsyncClient sqs;
+    private final String queueUrl;
+    private final AuditEventSerializer auditEventSerializer;
+    private final AuditEventFactory auditEventFactory;
+
+    public AsyncAuditService(
+            SqsAsyncClient sqs,
+            ConfigurationService configurationService,
+            ObjectMapper objectMapper,
+            AuditEventFactory auditEventFactory) {
+        this(sqs, configurationService, new AuditEventSerializer(objectMapper), auditEventFactory);
+    }
+
+    public AsyncAuditService(
+            SqsAsyncClient sqs,
+            ConfigurationService configurationService,
+            AuditEventSerializer auditEventSerializer,
+            AuditEventFactory auditEventFactory) {
+        this.sqs = sqs;
+        this.auditEventSerializer = auditEventSerializer;
+        this.auditEventFactory = auditEventFactory;
+        this.queueUrl = configurationService.getSqsAuditEventQueueUrl();
+        requireNonBlankQueueUrl();
+    }
+
+    private void requireNonBlankQueueUrl() {
+        if (StringUtils.isBlank(this.queueUrl)) {
+            throw new IllegalStateException(
+                    "Null or empty queue url provided by configuration service");
+        }
+    }
+
+    public CompletableFuture<Void> sendAuditEvent(AuditEventType eventType) {
+        return sendAuditEvent(eventType.toString(), null, null);
+    }
+
+    public CompletableFuture<Void> sendAuditEvent(String eventType) {
+        return sendAuditEvent(eventType, null, null);
+    }
+
+    public CompletableFuture<Void> sendAuditEvent(
+            AuditEventType eventType, AuditEventContext context) {
+        return sendAuditEvent(eventType.toString(), context, null);
+    }
+
+    public CompletableFuture<Void> sendAuditEvent(String eventType, AuditEventContext context) {
+        AuditEvent<Object> auditEvent = auditEventFactory.create(eventType, context, null);
+        return sendAuditEvent(auditEvent);
+    }
+
+    public <T> CompletableFuture<Void> sendAuditEvent(
+            AuditEventType eventType, AuditEventContext context, T extensions) {
+        return sendAuditEvent(eventType.toString(), context, extensions);
+    }
+
+    public <T> CompletableFuture<Void> sendAuditEvent(
+            String eventType, AuditEventContext context, T extensions) {
+        AuditEvent<T> auditEvent = auditEventFactory.create(eventType, context, extensions);
+        return sendAuditEvent(auditEvent);
+    }
+
+    public <T> CompletableFuture<Void> sendAuditEvent(AuditEventType eventType, T extensions) {
+        return sendAuditEvent(eventType.toString(), extensions);
+    }
+
+    public <T> CompletableFuture<Void> sendAuditEvent(String eventType, T extensions) {
+        AuditEvent<T> auditEvent = auditEventFactory.create(eventType, null, extensions);
+        return sendAuditEvent(auditEvent);
+    }
+
+    private <T> CompletableFuture<Void> sendAuditEvent(AuditEvent<T> auditEvent) {
+        String serialisedAuditEvent;
+        try {
+            serialisedAuditEvent = auditEventSerializer.serialise(auditEvent).json();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new SqsException(e));
+        }
+
+        SendMessageRequest sendMessageRequest =
+                SendMessageRequest.builder()
+                        .queueUrl(queueUrl)
+                        .messageBody(serialisedAuditEvent)
+                        .build();
+        return sqs.sendMessage(sendMessageRequest).thenApply(response -> null);
+    }
+}
@@ -0,0 +1,96 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serialises audit events to JSON with an {@link ObjectWriter} cached for each extensions type.
+ *
+ * <p>Events are written into a per-thread buffer that is reused between calls. The mapper passed
+ * in is copied before {@link JavaTimeModule} is registered, so the caller's mapper is not changed.
+ */
+public class AuditEventSerializer {
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    // Larger buffers are dropped after use rather than held by the thread
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ThreadLocal<ReusableByteArrayOutputStream> buffers =
+            ThreadLocal.withInitial(ReusableByteArrayOutputStream::new);
+
+    public AuditEventSerializer() {
+        this(new ObjectMapper());
+    }
+
+    public AuditEventSerializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().registerModule(new JavaTimeModule());
+    }
+
+    public SerialisedAuditEvent serialise(AuditEvent<?> auditEvent) throws JsonProcessingException {
+        ReusableByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try {
+            getWriter(auditEvent).writeValue(buffer, auditEvent);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Writing to memory does not fail, so only Jackson's own exceptions are expected
+            throw new UncheckedIOException(e);
+        }
+
+        SerialisedAuditEvent serialisedAuditEvent =
+                new SerialisedAuditEvent(buffer.toUtf8String(), buffer.size());
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        return serialisedAuditEvent;
+    }
+
+    private ObjectWriter getWriter(AuditEvent<?> auditEvent) {
+        Class<?> extensionsType =
+                auditEvent.getExtensions() == null
+                        ? Object.class
+                        : auditEvent.getExtensions().getClass();
+        return writers.computeIfAbsent(
+                extensionsType,
+                type -> {
+                    JavaType auditEventType =
+                            objectMapper
+                                    .getTypeFactory()
+                                    .constructParametricType(AuditEvent.class, type);
+                    return objectMapper.writerFor(auditEventType);
+                });
+    }
+
+    /**
+     * @param json the serialised event
+     * @param sizeInBytes the UTF-8 encoded size, as counted against the SQS message size limit
+     */
+    public record SerialisedAuditEvent(String json, int sizeInBytes) {}
+
+    private static final class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+        private ReusableByteArrayOutputStream() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private String toUtf8String() {
+            return new String(buf, 0, count, StandardCharsets.UTF_8);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+}
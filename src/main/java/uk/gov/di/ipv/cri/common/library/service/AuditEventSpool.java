@@ -0,0 +1,214 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A size-capped file of serialised audit events that could not be sent to SQS.
+ *
+ * <p>Each event is written on its own line with a random id that it keeps until it is removed.
+ * The id is used as the event's batch entry id when the spool is drained, so only the events that
+ * SQS accepted are removed and the rest are tried again later. The id is not sent with the event,
+ * and an event can reach the queue more than once if a send succeeds but its response is lost.
+ *
+ * <p>The file lives under {@code /tmp}, so it survives between invocations of a warm Lambda
+ * execution environment but not a cold start. Spools for the same file share a lock, so several
+ * services in one execution environment can use the default file.
+ */
+public class AuditEventSpool {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String SPOOL_FILE = "AUDIT_EVENT_SPOOL_FILE";
+    private static final String SPOOL_MAX_BYTES = "AUDIT_EVENT_SPOOL_MAX_BYTES";
+    private static final String DRAIN_INTERVAL_SECONDS = "AUDIT_EVENT_SPOOL_DRAIN_INTERVAL_SECONDS";
+    private static final String DEFAULT_SPOOL_FILE = "/tmp/audit-events.spool";
+    private static final long DEFAULT_SPOOL_MAX_BYTES = 10L * 1024 * 1024;
+    private static final long DEFAULT_DRAIN_INTERVAL_SECONDS = 30;
+    private static final char ID_SEPARATOR = '\t';
+    private static final Pattern LINE_BREAKS = Pattern.compile("[\r\n]");
+    private static final Map<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Object lock;
+    private final long maxBytes;
+    private final long drainIntervalMillis;
+    private long nextDrainAt;
+
+    public AuditEventSpool() {
+        this(
+                Path.of(Optional.ofNullable(System.getenv(SPOOL_FILE)).orElse(DEFAULT_SPOOL_FILE)),
+                Optional.ofNullable(System.getenv(SPOOL_MAX_BYTES))
+                        .map(Long::parseLong)
+                        .orElse(DEFAULT_SPOOL_MAX_BYTES),
+                TimeUnit.SECONDS.toMillis(
+                        Optional.ofNullable(System.getenv(DRAIN_INTERVAL_SECONDS))
+                                .map(Long::parseLong)
+                                .orElse(DEFAULT_DRAIN_INTERVAL_SECONDS)));
+    }
+
+    public AuditEventSpool(Path file, long maxBytes, long drainIntervalMillis) {
+        this.file = file;
+        this.lock =
+                FILE_LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), p -> new Object());
+        this.maxBytes = maxBytes;
+        this.drainIntervalMillis = drainIntervalMillis;
+    }
+
+    /**
+     * Appends events to the spool and forces them to disk. Line breaks in an event, such as those
+     * from a pretty-printing {@code ObjectMapper}, are replaced with spaces so that each event
+     * stays on one line. In JSON they can only appear between tokens, so the event is unchanged.
+     *
+     * @return false if the events were not written, because the spool would grow past its size
+     *     limit or the file could not be written
+     */
+    public boolean append(List<String> events) {
+        StringBuilder lines = new StringBuilder();
+        for (String event : events) {
+            lines.append(UUID.randomUUID())
+                    .append(ID_SEPARATOR)
+                    .append(LINE_BREAKS.matcher(event).replaceAll(" "))
+                    .append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            if (sizeOf(file) + bytes.length > maxBytes) {
+                LOGGER.warn("Audit event spool is full, {} events were not spooled", events.size());
+                return false;
+            }
+
+            try (FileChannel channel =
+                    FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write to the audit event spool", e);
+                return false;
+            }
+            // Leave the spool alone for a while, as whatever stopped the send is likely still there
+            deferDrain();
+            return true;
+        }
+    }
+
+    /** Returns true if events are spooled and the drain interval has passed since the last try. */
+    public boolean isDrainDue() {
+        synchronized (lock) {
+            return System.currentTimeMillis() >= nextDrainAt && sizeOf(file) > 0;
+        }
+    }
+
+    /**
+     * Returns the spooled events in the order they were written, or no events if the spool could
+     * not be read.
+     */
+    public List<SpooledAuditEvent> read() {
+        synchronized (lock) {
+            try {
+                return readEvents();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read the audit event spool", e);
+                return List.of();
+            }
+        }
+    }
+
+    private List<SpooledAuditEvent> readEvents() throws IOException {
+        if (sizeOf(file) == 0) {
+            return List.of();
+        }
+        Map<String, SpooledAuditEvent> events = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(ID_SEPARATOR);
+            // A partly written last line, from a write that did not complete, is skipped
+            if (separator > 0) {
+                String id = line.substring(0, separator);
+                events.putIfAbsent(id, new SpooledAuditEvent(id, line.substring(separator + 1)));
+            }
+        }
+        return new ArrayList<>(events.values());
+    }
+
+    /**
+     * Removes events from the spool once they have been sent, or can never be sent. Events
+     * appended since the spool was read are kept.
+     */
+    public void remove(Set<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            rewriteWithout(ids);
+        }
+    }
+
+    private void rewriteWithout(Set<String> ids) {
+        try {
+            // If the spool cannot be read it is left as it is, rather than rewritten as empty
+            List<SpooledAuditEvent> remaining =
+                    readEvents().stream().filter(event -> !ids.contains(event.id())).toList();
+            if (remaining.isEmpty()) {
+                Files.deleteIfExists(file);
+            } else {
+                Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+                try (BufferedWriter writer =
+                        Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    for (SpooledAuditEvent event : remaining) {
+                        writer.write(event.id() + ID_SEPARATOR + event.json());
+                        writer.newLine();
+                    }
+                }
+                Files.move(
+                        tempFile,
+                        file,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to rewrite the audit event spool", e);
+        }
+    }
+
+    /** Stops {@link #isDrainDue()} returning true until the drain interval has passed. */
+    public void deferDrain() {
+        synchronized (lock) {
+            nextDrainAt = System.currentTimeMillis() + drainIntervalMillis;
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param id a random id given to the event when it was spooled, used as its batch entry id
+     * @param json the serialised event
+     */
+    public record SpooledAuditEvent(String id, String json) {}
+}
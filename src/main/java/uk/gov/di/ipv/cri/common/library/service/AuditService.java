@@ -2,28 +2,132 @@ package uk.gov.di.ipv.cri.common.library.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import software.amazon.awssdk.utils.StringUtils;
 import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
 import uk.gov.di.ipv.cri.common.library.domain.AuditEventContext;
 import uk.gov.di.ipv.cri.common.library.domain.AuditEventType;
 import uk.gov.di.ipv.cri.common.library.exception.SqsException;
+import uk.gov.di.ipv.cri.common.library.service.AuditEventSerializer.SerialisedAuditEvent;
+import uk.gov.di.ipv.cri.common.library.service.AuditEventSpool.SpooledAuditEvent;
+import uk.gov.di.ipv.cri.common.library.util.retry.RetryConfig;
+import uk.gov.di.ipv.cri.common.library.util.retry.RetryManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class AuditService {
+    private static final Logger LOGGER = LogManager.getLogger();
+    // SendMessageBatch limits
+    private static final int MAX_BATCH_ENTRIES = 10;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+    private static final int MAX_DRAIN_BATCHES = 10;
+    // Draining before an event is sent holds up the caller, so only one batch is sent then
+    private static final int MAX_DRAIN_BATCHES_BEFORE_EVENT = 1;
+    private static final long BATCH_RETRY_DELAY_MILLIS = 50;
+    // Only entries SQS could not take are resent here, as the SDK retries failed requests itself
+    private static final RetryConfig BATCH_RETRY_CONFIG =
+            new RetryConfig.Builder()
+                    .maxAttempts(MAX_BATCH_ATTEMPTS)
+                    .delayBetweenAttempts(BATCH_RETRY_DELAY_MILLIS)
+                    .exponentiallyRetry(true)
+                    .jitter(RetryConfig.Jitter.FULL)
+                    .abortOn(e -> !(e instanceof BatchEntriesFailedException))
+                    .build();
+
     private final SqsClient sqs;
     private final String queueUrl;
-    private final ObjectMapper objectMapper;
+    private final AuditEventSerializer auditEventSerializer;
     private final AuditEventFactory auditEventFactory;
+    private final AuditEventSpool auditEventSpool;
+    private final boolean bufferEvents;
+    private final List<String> bufferedEvents = new ArrayList<>();
+    private int bufferedBytes;
 
     public AuditService(
             SqsClient sqs,
             ConfigurationService configurationService,
             ObjectMapper objectMapper,
             AuditEventFactory auditEventFactory) {
+        this(sqs, configurationService, objectMapper, auditEventFactory, false);
+    }
+
+    public AuditService(
+            SqsClient sqs,
+            ConfigurationService configurationService,
+            ObjectMapper objectMapper,
+            AuditEventFactory auditEventFactory,
+            boolean bufferEvents) {
+        this(
+                sqs,
+                configurationService,
+                new AuditEventSerializer(objectMapper),
+                auditEventFactory,
+                bufferEvents);
+    }
+
+    public AuditService(
+            SqsClient sqs,
+            ConfigurationService configurationService,
+            AuditEventSerializer auditEventSerializer,
+            AuditEventFactory auditEventFactory) {
+        this(sqs, configurationService, auditEventSerializer, auditEventFactory, false);
+    }
+
+    /**
+     * @param auditEventSerializer serialises events, and can be shared between services
+     * @param bufferEvents when true, events are held and sent with SendMessageBatch once ten have
+     *     been collected or when {@link #flush()} is called. Handlers using this mode must call
+     *     {@link #flush()} before the invocation ends, or the remaining events are not sent.
+     */
+    public AuditService(
+            SqsClient sqs,
+            ConfigurationService configurationService,
+            AuditEventSerializer auditEventSerializer,
+            AuditEventFactory auditEventFactory,
+            boolean bufferEvents) {
+        this(
+                sqs,
+                configurationService,
+                auditEventSerializer,
+                auditEventFactory,
+                bufferEvents,
+                null);
+    }
+
+    /**
+     * @param auditEventSpool when set, events that cannot be sent are written to the spool instead
+     *     of failing the call. Once the spool's drain interval has passed, one batch of spooled
+     *     events is sent before the next event, so a large spool does not hold up the caller.
+     *     {@link #drainSpool()} sends more at a time.
+     */
+    public AuditService(
+            SqsClient sqs,
+            ConfigurationService configurationService,
+            AuditEventSerializer auditEventSerializer,
+            AuditEventFactory auditEventFactory,
+            boolean bufferEvents,
+            AuditEventSpool auditEventSpool) {
         this.sqs = sqs;
-        this.objectMapper = objectMapper.registerModule(new JavaTimeModule());
+        this.auditEventSpool = auditEventSpool;
+        this.bufferEvents = bufferEvents;
+        this.auditEventSerializer = auditEventSerializer;
         this.auditEventFactory = auditEventFactory;
         this.queueUrl = configurationService.getSqsAuditEventQueueUrl();
         requireNonBlankQueueUrl();
@@ -74,17 +178,296 @@ public class AuditService {
         sendAuditEvent(audiEvent);
     }
 
+    /**
+     * Sends any buffered events. Does nothing when events are not being buffered. The buffer is
+     * emptied before the batch is sent, so if this throws the buffered events are lost, unless a
+     * spool was given to take them.
+     */
+    public synchronized void flush() throws SqsException {
+        if (bufferedEvents.isEmpty()) {
+            return;
+        }
+        List<String> events = new ArrayList<>(bufferedEvents);
+        bufferedEvents.clear();
+        bufferedBytes = 0;
+        sendBatch(events);
+    }
+
+    private synchronized void bufferAuditEvent(SerialisedAuditEvent serialisedAuditEvent)
+            throws SqsException {
+        int eventBytes = serialisedAuditEvent.sizeInBytes();
+        if (!bufferedEvents.isEmpty() && bufferedBytes + eventBytes > MAX_BATCH_BYTES) {
+            flush();
+        }
+        bufferedEvents.add(serialisedAuditEvent.json());
+        bufferedBytes += eventBytes;
+        if (bufferedEvents.size() == MAX_BATCH_ENTRIES) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends events held in the spool, up to ten batches at a time. Events that still cannot be
+     * sent stay in the spool. Does nothing when no spool was given.
+     */
+    public void drainSpool() {
+        drainSpool(MAX_DRAIN_BATCHES);
+    }
+
+    private synchronized void drainSpool(int maxBatches) {
+        if (auditEventSpool == null) {
+            return;
+        }
+        List<SpooledAuditEvent> spooledEvents = auditEventSpool.read();
+        if (spooledEvents.isEmpty()) {
+            return;
+        }
+        Set<String> removedIds = new HashSet<>();
+        boolean failed = false;
+        int index = 0;
+        for (int batch = 0;
+                batch < maxBatches && index < spooledEvents.size() && !failed;
+                batch++) {
+            Map<String, String> eventsById = new LinkedHashMap<>();
+            int batchBytes = 0;
+            while (index < spooledEvents.size() && eventsById.size() < MAX_BATCH_ENTRIES) {
+                SpooledAuditEvent event = spooledEvents.get(index);
+                int eventBytes = event.json().getBytes(StandardCharsets.UTF_8).length;
+                if (!eventsById.isEmpty() && batchBytes + eventBytes > MAX_BATCH_BYTES) {
+                    break;
+                }
+                eventsById.put(event.id(), event.json());
+                batchBytes += eventBytes;
+                index++;
+            }
+
+            try {
+                failed = removeSentEvents(eventsById, sendBatchEntries(eventsById), removedIds);
+            } catch (SdkException e) {
+                if (isTransient(e)) {
+                    LOGGER.warn("Failed to send spooled audit events", e);
+                    failed = true;
+                } else {
+                    // An event SQS will not take, such as one that is too large, must not hold
+                    // up the rest of the spool, so each event is sent on its own
+                    failed = sendSpooledEventsAlone(eventsById, removedIds);
+                }
+            }
+        }
+
+        auditEventSpool.remove(removedIds);
+        if (failed) {
+            auditEventSpool.deferDrain();
+        }
+        LOGGER.info("Sent {} of {} spooled audit events", removedIds.size(), spooledEvents.size());
+    }
+
+    /**
+     * Adds the ids of the events that were sent, or were rejected as invalid, to {@code
+     * removedIds}. Returns true if any event could not be sent for now.
+     */
+    private static boolean removeSentEvents(
+            Map<String, String> eventsById,
+            List<BatchResultErrorEntry> failures,
+            Set<String> removedIds) {
+        Set<String> unsentIds = new HashSet<>();
+        for (BatchResultErrorEntry failure : failures) {
+            if (isSenderFault(failure)) {
+                // Resending an event SQS rejects as invalid fails the same way each time
+                LOGGER.error(
+                        "Dropping spooled audit event {} rejected by SQS: {}",
+                        failure.id(),
+                        failure.message());
+            } else {
+                unsentIds.add(failure.id());
+            }
+        }
+        eventsById.keySet().stream().filter(id -> !unsentIds.contains(id)).forEach(removedIds::add);
+        return !unsentIds.isEmpty();
+    }
+
+    private boolean sendSpooledEventsAlone(Map<String, String> eventsById, Set<String> removedIds) {
+        boolean failed = false;
+        for (Map.Entry<String, String> event : eventsById.entrySet()) {
+            Map<String, String> singleEvent = Map.of(event.getKey(), event.getValue());
+            try {
+                failed |= removeSentEvents(singleEvent, sendBatchEntries(singleEvent), removedIds);
+            } catch (SdkException e) {
+                if (isTransient(e) || isQueueError(e)) {
+                    LOGGER.warn("Failed to send spooled audit events", e);
+                    return true;
+                }
+                LOGGER.error("Dropping spooled audit event {} rejected by SQS", event.getKey(), e);
+                removedIds.add(event.getKey());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Returns true for failures that may pass if the request is sent again later: failures on the
+     * client side, such as timeouts, and throttling or server errors. Other failures are SQS
+     * rejecting the request, which fails the same way each time.
+     */
+    private static boolean isTransient(SdkException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.retryable()
+                    || serviceException.isThrottlingException()
+                    || serviceException.statusCode() >= 500;
+        }
+        return true;
+    }
+
+    /** Returns true if the request failed because of the queue or access to it, not the event. */
+    private static boolean isQueueError(SdkException e) {
+        return e instanceof QueueDoesNotExistException
+                || (e instanceof AwsServiceException serviceException
+                        && (serviceException.statusCode() == 401
+                                || serviceException.statusCode() == 403));
+    }
+
+    private void drainSpoolIfDue() {
+        if (auditEventSpool != null && auditEventSpool.isDrainDue()) {
+            drainSpool(MAX_DRAIN_BATCHES_BEFORE_EVENT);
+        }
+    }
+
+    private boolean spool(List<String> events, Exception cause) {
+        if (auditEventSpool == null || !auditEventSpool.append(events)) {
+            return false;
+        }
+        LOGGER.warn("Spooled {} audit events that could not be sent", events.size(), cause);
+        return true;
+    }
+
+    private void sendBatch(List<String> events) throws SqsException {
+        // Entry ids are the index of the event so that failed entries can be resent on their own
+        Map<String, String> eventsById = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            eventsById.put(String.valueOf(i), events.get(i));
+        }
+
+        List<BatchResultErrorEntry> failures;
+        try {
+            failures = sendBatchEntries(eventsById);
+        } catch (SdkException e) {
+            // A request SQS rejects, rather than one that failed for now, is not spooled
+            if (isTransient(e) && spool(events, e)) {
+                return;
+            }
+            throw e;
+        }
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        List<String> retryableEvents =
+                failures.stream()
+                        .filter(failure -> !isSenderFault(failure))
+                        .map(failure -> eventsById.get(failure.id()))
+                        .toList();
+        if (!retryableEvents.isEmpty() && spool(retryableEvents, null)) {
+            failures = failures.stream().filter(AuditService::isSenderFault).toList();
+            if (failures.isEmpty()) {
+                return;
+            }
+        }
+        throw new SqsException(
+                String.format(
+                        "Failed to send %d of %d audit events: %s",
+                        failures.size(), events.size(), failures));
+    }
+
+    /**
+     * Returns the entries that still failed after the last attempt. Entries that failed with a
+     * sender fault are not resent, as they fail the same way each time, but the rest of the batch
+     * is resent after a short backoff.
+     */
+    private List<BatchResultErrorEntry> sendBatchEntries(Map<String, String> eventsById) {
+        Map<String, SendMessageBatchRequestEntry> pendingEntries = new LinkedHashMap<>();
+        eventsById.forEach(
+                (id, event) ->
+                        pendingEntries.put(
+                                id,
+                                SendMessageBatchRequestEntry.builder()
+                                        .id(id)
+                                        .messageBody(event)
+                                        .build()));
+
+        List<BatchResultErrorEntry> senderFaults = new ArrayList<>();
+        try {
+            RetryManager.execute(
+                    BATCH_RETRY_CONFIG,
+                    () -> {
+                        SendMessageBatchResponse response =
+                                sqs.sendMessageBatch(
+                                        SendMessageBatchRequest.builder()
+                                                .queueUrl(queueUrl)
+                                                .entries(pendingEntries.values())
+                                                .build());
+                        Set<String> failedIds = new HashSet<>();
+                        List<BatchResultErrorEntry> retryableFailures = new ArrayList<>();
+                        for (BatchResultErrorEntry failure : response.failed()) {
+                            if (isSenderFault(failure)) {
+                                senderFaults.add(failure);
+                            } else {
+                                failedIds.add(failure.id());
+                                retryableFailures.add(failure);
+                            }
+                        }
+                        pendingEntries.keySet().retainAll(failedIds);
+                        if (!retryableFailures.isEmpty()) {
+                            LOGGER.warn(
+                                    "{} audit events failed in a batch", retryableFailures.size());
+                            throw new BatchEntriesFailedException(retryableFailures);
+                        }
+                        return null;
+                    });
+        } catch (BatchEntriesFailedException e) {
+            List<BatchResultErrorEntry> failures = new ArrayList<>(senderFaults);
+            failures.addAll(e.failures);
+            return failures;
+        }
+        return senderFaults;
+    }
+
+    private static boolean isSenderFault(BatchResultErrorEntry failure) {
+        return Boolean.TRUE.equals(failure.senderFault());
+    }
+
     private <T> void sendAuditEvent(AuditEvent<T> auditEvent) throws SqsException {
+        SerialisedAuditEvent serialisedAuditEvent;
         try {
-            String serialisedAuditEvent = objectMapper.writeValueAsString(auditEvent);
-            SendMessageRequest sendMessageRequest =
-                    SendMessageRequest.builder()
-                            .queueUrl(queueUrl)
-                            .messageBody(serialisedAuditEvent)
-                            .build();
-            sqs.sendMessage(sendMessageRequest);
+            serialisedAuditEvent = auditEventSerializer.serialise(auditEvent);
         } catch (JsonProcessingException e) {
             throw new SqsException(e);
         }
+
+        drainSpoolIfDue();
+        if (bufferEvents) {
+            bufferAuditEvent(serialisedAuditEvent);
+            return;
+        }
+        SendMessageRequest sendMessageRequest =
+                SendMessageRequest.builder()
+                        .queueUrl(queueUrl)
+                        .messageBody(serialisedAuditEvent.json())
+                        .build();
+        try {
+            sqs.sendMessage(sendMessageRequest);
+        } catch (SdkException e) {
+            if (!isTransient(e) || !spool(List.of(serialisedAuditEvent.json()), e)) {
+                throw e;
+            }
+        }
+    }
+
+    private static final class BatchEntriesFailedException extends RuntimeException {
+        private final transient List<BatchResultErrorEntry> failures;
+
+        private BatchEntriesFailedException(List<BatchResultErrorEntry> failures) {
+            super("Failed to send " + failures.size() + " audit events in a batch");
+            this.failures = failures;
+        }
     }
 }
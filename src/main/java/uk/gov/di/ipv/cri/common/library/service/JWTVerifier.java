@@ -2,10 +2,14 @@ package uk.gov.di.ipv.cri.common.library.service;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.ECDSAVerifier;
 import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.crypto.impl.ECDSA;
 import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimNames;
 import com.nimbusds.jwt.JWTClaimsSet;
@@ -15,6 +19,7 @@ import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
 import com.nimbusds.oauth2.sdk.id.ClientID;
 import uk.gov.di.ipv.cri.common.library.exception.ClientConfigurationException;
 import uk.gov.di.ipv.cri.common.library.exception.SessionValidationException;
+import uk.gov.di.ipv.cri.common.library.util.BoundedCache;
 import uk.gov.di.ipv.cri.common.library.util.JwkKeyCache;
 
 import java.io.ByteArrayInputStream;
@@ -37,7 +42,27 @@ import java.util.Set;
 import static com.nimbusds.jose.JWSAlgorithm.ES256;
 
 public class JWTVerifier {
+    private static final int MAX_CACHED_VERIFIERS = 64;
+    private static final Set<String> AUTHORIZATION_REQUIRED_CLAIMS =
+            Set.of(JWTClaimNames.EXPIRATION_TIME, JWTClaimNames.SUBJECT, JWTClaimNames.NOT_BEFORE);
+    private static final Set<String> ACCESS_TOKEN_REQUIRED_CLAIMS =
+            Set.of(
+                    JWTClaimNames.EXPIRATION_TIME,
+                    JWTClaimNames.SUBJECT,
+                    JWTClaimNames.ISSUER,
+                    JWTClaimNames.AUDIENCE,
+                    JWTClaimNames.JWT_ID);
+
     private final JwkKeyCache jwkKeyCache;
+    // Keyed by algorithm and serialised key, so a rotated SSM or JWKS key gets a fresh verifier
+    private final BoundedCache<String, JWSVerifier> verifierCache =
+            new BoundedCache<>(MAX_CACHED_VERIFIERS);
+    // JWKs compare by their key parameters, so a rotated JWKS key gets a fresh verifier
+    private final BoundedCache<JWK, JWSVerifier> jwkVerifierCache =
+            new BoundedCache<>(MAX_CACHED_VERIFIERS);
+    // Claims verifiers only depend on client config, so one is built per distinct client
+    private final BoundedCache<ClaimsVerifierKey, DefaultJWTClaimsVerifier<SecurityContext>>
+            claimsVerifierCache = new BoundedCache<>(MAX_CACHED_VERIFIERS);
 
     public JWTVerifier() {
         jwkKeyCache = new JwkKeyCache();
@@ -53,33 +78,26 @@ public class JWTVerifier {
         verifyJWT(
                 clientAuthenticationConfig,
                 signedJWT,
-                Set.of(
-                        JWTClaimNames.EXPIRATION_TIME,
-                        JWTClaimNames.SUBJECT,
-                        JWTClaimNames.NOT_BEFORE),
-                new JWTClaimsSet.Builder()
-                        .issuer(clientAuthenticationConfig.get("issuer"))
-                        .audience(clientAuthenticationConfig.get("audience"))
-                        .build());
+                getClaimsVerifier(
+                        new ClaimsVerifierKey(
+                                AUTHORIZATION_REQUIRED_CLAIMS,
+                                clientAuthenticationConfig.get("issuer"),
+                                null,
+                                clientAuthenticationConfig.get("audience"))));
     }
 
     public void verifyAccessTokenJWT(
             Map<String, String> clientAuthenticationConfig, SignedJWT signedJWT, ClientID clientID)
             throws SessionValidationException, ClientConfigurationException {
-        Set<String> requiredClaims =
-                Set.of(
-                        JWTClaimNames.EXPIRATION_TIME,
-                        JWTClaimNames.SUBJECT,
-                        JWTClaimNames.ISSUER,
-                        JWTClaimNames.AUDIENCE,
-                        JWTClaimNames.JWT_ID);
-        JWTClaimsSet expectedClaimValues =
-                new JWTClaimsSet.Builder()
-                        .issuer(clientID.getValue())
-                        .subject(clientID.getValue())
-                        .audience(clientAuthenticationConfig.get("audience"))
-                        .build();
-        verifyJWT(clientAuthenticationConfig, signedJWT, requiredClaims, expectedClaimValues);
+        verifyJWT(
+                clientAuthenticationConfig,
+                signedJWT,
+                getClaimsVerifier(
+                        new ClaimsVerifierKey(
+                                ACCESS_TOKEN_REQUIRED_CLAIMS,
+                                clientID.getValue(),
+                                clientID.getValue(),
+                                clientAuthenticationConfig.get("audience"))));
     }
 
     public void validateMaxAllowedJarTtl(Instant jwtExpirationTime, long maxAllowedTtl)
@@ -99,11 +117,10 @@ public class JWTVerifier {
     private void verifyJWT(
             Map<String, String> clientAuthenticationConfig,
             SignedJWT signedJWT,
-            Set<String> requiredClaims,
-            JWTClaimsSet expectedClaimValues)
+            DefaultJWTClaimsVerifier<SecurityContext> claimsVerifier)
             throws SessionValidationException, ClientConfigurationException {
         this.verifyJWTHeader(clientAuthenticationConfig, signedJWT);
-        this.verifyJWTClaimsSet(signedJWT, requiredClaims, expectedClaimValues);
+        this.verifyJWTClaimsSet(signedJWT, claimsVerifier);
         this.verifyJWTSignature(clientAuthenticationConfig, signedJWT);
     }
 
@@ -126,39 +143,39 @@ public class JWTVerifier {
             throws SessionValidationException, ClientConfigurationException {
 
         try {
-            SignedJWT concatSignatureJwt;
+            Base64URL concatSignature;
             if (signatureIsDerFormat(signedJWT)) {
-                concatSignatureJwt = transcodeSignature(signedJWT);
+                concatSignature = transcodeSignature(signedJWT);
             } else {
-                concatSignatureJwt = signedJWT;
+                concatSignature = signedJWT.getSignature();
             }
 
-            Optional<String> optionalBase64JwkForKid =
-                    jwkKeyCache.getBase64JwkForKid(
-                            clientAuthenticationConfig.get("jwksEndpoint"),
-                            signedJWT.getHeader().getKeyID());
-
-            final String publicCertificateToVerify;
-            if (optionalBase64JwkForKid.isPresent() && jwkKeyCache.isUsingPublicJwk()) {
+            JWSAlgorithm signingAlgorithm = signedJWT.getHeader().getAlgorithm();
+            final JWSVerifier jwsVerifier;
+            if (jwkKeyCache.isUsingPublicJwk()) {
+                String keyId = signedJWT.getHeader().getKeyID();
+                Optional<JWK> signingJwk =
+                        jwkKeyCache.getSigningJwkForKid(
+                                clientAuthenticationConfig.get("jwksEndpoint"), keyId);
+                if (signingJwk.isEmpty()) {
+                    // No KeyID and PublicJwk enabled - Fail
+                    throw new SessionValidationException(
+                            String.format("%s not found in public JWK response", keyId));
+                }
                 // Have KeyID and PublicJwk enabled
-                publicCertificateToVerify = optionalBase64JwkForKid.get();
-            } else if (optionalBase64JwkForKid.isEmpty() && jwkKeyCache.isUsingPublicJwk()) {
-                // No KeyID and PublicJwk enabled - Fail
-                throw new SessionValidationException(
-                        String.format(
-                                "%s not found in public JWK response",
-                                signedJWT.getHeader().getKeyID()));
+                jwsVerifier = getVerifier(signingJwk.get());
             } else {
                 // KeyID ignored and Cache disabled - fall back to legacy key
-                publicCertificateToVerify =
-                        clientAuthenticationConfig.get("publicSigningJwkBase64");
+                jwsVerifier =
+                        getVerifier(
+                                clientAuthenticationConfig.get("publicSigningJwkBase64"),
+                                signingAlgorithm);
             }
 
-            JWSAlgorithm signingAlgorithm = signedJWT.getHeader().getAlgorithm();
-            PublicKey pubicKeyFromConfig =
-                    getPublicKeyFromConfig(publicCertificateToVerify, signingAlgorithm);
-
-            if (!verifySignature(concatSignatureJwt, pubicKeyFromConfig)) {
+            // Verify against the original signing input so a transcoded signature does not
+            // require the JWT to be re-serialised and parsed again
+            if (!jwsVerifier.verify(
+                    signedJWT.getHeader(), signedJWT.getSigningInput(), concatSignature)) {
                 throw new SessionValidationException("JWT signature verification failed");
             }
         } catch (JOSEException | ParseException e) {
@@ -169,33 +186,47 @@ public class JWTVerifier {
     }
 
     private boolean signatureIsDerFormat(SignedJWT signedJWT) throws JOSEException {
-        return signedJWT.getSignature().decode().length != ECDSA.getSignatureByteArrayLength(ES256);
+        // Only ECDSA signatures have a DER form, RSA signatures are always passed through as-is
+        return JWSAlgorithm.Family.EC.contains(signedJWT.getHeader().getAlgorithm())
+                && signedJWT.getSignature().decode().length
+                        != ECDSA.getSignatureByteArrayLength(ES256);
     }
 
-    private SignedJWT transcodeSignature(SignedJWT signedJWT) throws JOSEException, ParseException {
-        Base64URL transcodedSignatureBase64 =
-                Base64URL.encode(
-                        ECDSA.transcodeSignatureToConcat(
-                                signedJWT.getSignature().decode(),
-                                ECDSA.getSignatureByteArrayLength(ES256)));
-        String[] jwtParts = signedJWT.serialize().split("\\.");
-        return SignedJWT.parse(
-                String.format("%s.%s.%s", jwtParts[0], jwtParts[1], transcodedSignatureBase64));
+    private Base64URL transcodeSignature(SignedJWT signedJWT) throws JOSEException {
+        return Base64URL.encode(
+                ECDSA.transcodeSignatureToConcat(
+                        signedJWT.getSignature().decode(),
+                        ECDSA.getSignatureByteArrayLength(ES256)));
     }
 
     private void verifyJWTClaimsSet(
-            SignedJWT signedJWT, Set<String> requiredClaims, JWTClaimsSet expectedClaimValues)
+            SignedJWT signedJWT, DefaultJWTClaimsVerifier<SecurityContext> claimsVerifier)
             throws SessionValidationException {
 
         try {
-            new DefaultJWTClaimsVerifier<>(expectedClaimValues, requiredClaims)
-                    .verify(signedJWT.getJWTClaimsSet(), null);
+            claimsVerifier.verify(signedJWT.getJWTClaimsSet(), null);
 
         } catch (BadJWTException | ParseException e) {
             throw new SessionValidationException(e.getMessage(), e);
         }
     }
 
+    private DefaultJWTClaimsVerifier<SecurityContext> getClaimsVerifier(ClaimsVerifierKey key) {
+        DefaultJWTClaimsVerifier<SecurityContext> claimsVerifier = claimsVerifierCache.get(key);
+        if (claimsVerifier == null) {
+            JWTClaimsSet.Builder expectedClaimValues =
+                    new JWTClaimsSet.Builder().issuer(key.issuer()).audience(key.audience());
+            if (key.subject() != null) {
+                expectedClaimValues.subject(key.subject());
+            }
+            claimsVerifier =
+                    new DefaultJWTClaimsVerifier<>(
+                            expectedClaimValues.build(), key.requiredClaims());
+            claimsVerifierCache.put(key, claimsVerifier);
+        }
+        return claimsVerifier;
+    }
+
     private PublicKey getPublicKeyFromConfig(
             String serialisedPublicKey, JWSAlgorithm signingAlgorithm)
             throws CertificateException, ParseException, JOSEException {
@@ -214,18 +245,47 @@ public class JWTVerifier {
         }
     }
 
-    private boolean verifySignature(SignedJWT signedJWT, PublicKey clientPublicKey)
+    private JWSVerifier getVerifier(String serialisedPublicKey, JWSAlgorithm signingAlgorithm)
+            throws CertificateException, ParseException, JOSEException,
+                    ClientConfigurationException {
+        String cacheKey = signingAlgorithm.getName() + ":" + serialisedPublicKey;
+        JWSVerifier jwsVerifier = verifierCache.get(cacheKey);
+        if (jwsVerifier == null) {
+            jwsVerifier =
+                    createVerifier(getPublicKeyFromConfig(serialisedPublicKey, signingAlgorithm));
+            verifierCache.put(cacheKey, jwsVerifier);
+        }
+        return jwsVerifier;
+    }
+
+    private JWSVerifier getVerifier(JWK signingJwk) throws JOSEException {
+        JWSVerifier jwsVerifier = jwkVerifierCache.get(signingJwk);
+        if (jwsVerifier == null) {
+            if (signingJwk instanceof RSAKey rsaKey) {
+                jwsVerifier = new RSASSAVerifier(rsaKey);
+            } else if (signingJwk instanceof ECKey ecKey) {
+                jwsVerifier = new ECDSAVerifier(ecKey);
+            } else {
+                throw new JOSEException("Unsupported public JWK type: " + signingJwk.getKeyType());
+            }
+            jwkVerifierCache.put(signingJwk, jwsVerifier);
+        }
+        return jwsVerifier;
+    }
+
+    private JWSVerifier createVerifier(PublicKey clientPublicKey)
             throws JOSEException, ClientConfigurationException {
         if (clientPublicKey instanceof RSAPublicKey rsaPublicKey) {
-            RSASSAVerifier rsassaVerifier = new RSASSAVerifier(rsaPublicKey);
-            return signedJWT.verify(rsassaVerifier);
+            return new RSASSAVerifier(rsaPublicKey);
         } else if (clientPublicKey instanceof ECPublicKey ecPublicKey) {
-            ECDSAVerifier ecdsaVerifier = new ECDSAVerifier(ecPublicKey);
-            return signedJWT.verify(ecdsaVerifier);
+            return new ECDSAVerifier(ecPublicKey);
         } else {
             throw new ClientConfigurationException(
                     new IllegalStateException(
                             "unknown public signing key: " + clientPublicKey.getAlgorithm()));
         }
     }
+
+    private record ClaimsVerifierKey(
+            Set<String> requiredClaims, String issuer, String subject, String audience) {}
 }
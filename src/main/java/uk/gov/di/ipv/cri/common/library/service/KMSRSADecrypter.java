@@ -12,6 +12,7 @@ import com.nimbusds.jose.util.Base64URL;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
 import software.amazon.awssdk.services.kms.KmsClient;
 import software.amazon.awssdk.services.kms.model.DecryptRequest;
 import software.amazon.awssdk.services.kms.model.DecryptResponse;
@@ -21,8 +22,17 @@ import uk.gov.di.ipv.cri.common.library.util.EventProbe;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static software.amazon.awssdk.services.kms.model.EncryptionAlgorithmSpec.RSAES_OAEP_SHA_256;
 
@@ -37,17 +47,60 @@ public class KMSRSADecrypter implements JWEDecrypter {
             "session_decryption_key_inactive_alias";
     private static final String SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS =
             "session_decryption_key_previous_alias";
+    private static final List<String> KEY_ALIASES =
+            List.of(
+                    SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                    SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                    SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS);
     private static final String ALL_ALIASES_UNAVAILABLE = "all_aliases_unavailable_for_decryption";
+    private static final String ALIAS_FAILURE_THRESHOLD = "KMS_DECRYPTION_ALIAS_FAILURE_THRESHOLD";
+    private static final String ALIAS_COOL_DOWN_SECONDS = "KMS_DECRYPTION_ALIAS_COOL_DOWN_SECONDS";
+    private static final int DEFAULT_ALIAS_FAILURE_THRESHOLD = 3;
+    private static final long DEFAULT_ALIAS_COOL_DOWN_SECONDS = 60;
+    private static final String HEDGE_DELAY_MILLIS = "KMS_DECRYPTION_HEDGE_DELAY_MILLIS";
+    private static final String DECRYPTION_TIMEOUT_MILLIS = "KMS_DECRYPTION_TIMEOUT_MILLIS";
+    // Around the p95 latency of a KMS Decrypt call, so a later key is only tried when the earlier
+    // request is slow rather than on every decryption
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 100;
+    private static final long DEFAULT_DECRYPTION_TIMEOUT_MILLIS = 5000;
     private boolean keyRotationEnabled = false;
     private boolean keyRotationLegacyKeyFallbackEnabled = false;
     private final JWEJCAContext jcaContext;
     private final KmsClient kmsClient;
+    private final KmsAsyncClient kmsAsyncClient;
     private final EventProbe eventProbe;
     private final String keyId;
+    private final int aliasFailureThreshold;
+    private final long aliasCoolDownMillis;
+    private final long hedgeDelayMillis;
+    private final long decryptionTimeoutMillis;
+    private final Map<String, AliasHealth> aliasHealth =
+            Map.of(
+                    SESSION_DECRYPTION_KEY_PRIMARY_ALIAS, new AliasHealth(),
+                    SESSION_DECRYPTION_KEY_SECONDARY_ALIAS, new AliasHealth(),
+                    SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS, new AliasHealth());
+    // The alias that last decrypted successfully, tried first on the next request
+    private volatile String preferredAlias;
 
     public KMSRSADecrypter(String keyId, KmsClient kmsClient, EventProbe eventProbe) {
+        this(keyId, kmsClient, null, eventProbe);
+    }
+
+    /**
+     * With key rotation enabled and a {@link KmsAsyncClient} supplied, the key aliases (and the
+     * legacy key, when the fallback is enabled) are tried concurrently rather than one after
+     * another. {@code KMS_DECRYPTION_HEDGE_DELAY_MILLIS} staggers the requests so that each one is
+     * only sent if the previous has not succeeded within the delay, and {@code
+     * KMS_DECRYPTION_TIMEOUT_MILLIS} limits how long to wait for any of them.
+     */
+    public KMSRSADecrypter(
+            String keyId,
+            KmsClient kmsClient,
+            KmsAsyncClient kmsAsyncClient,
+            EventProbe eventProbe) {
         this(
                 kmsClient,
+                kmsAsyncClient,
                 eventProbe,
                 keyId,
                 Boolean.parseBoolean(System.getenv("ENV_VAR_FEATURE_FLAG_KEY_ROTATION")),
@@ -61,12 +114,40 @@ public class KMSRSADecrypter implements JWEDecrypter {
             String keyId,
             Boolean keyRotationEnabled,
             boolean legacyKeyFallbackEnabled) {
+        this(kmsClient, null, eventProbe, keyId, keyRotationEnabled, legacyKeyFallbackEnabled);
+    }
+
+    public KMSRSADecrypter(
+            KmsClient kmsClient,
+            KmsAsyncClient kmsAsyncClient,
+            EventProbe eventProbe,
+            String keyId,
+            Boolean keyRotationEnabled,
+            boolean legacyKeyFallbackEnabled) {
         this.jcaContext = new JWEJCAContext();
         this.kmsClient = kmsClient;
+        this.kmsAsyncClient = kmsAsyncClient;
         this.eventProbe = eventProbe;
         this.keyId = keyId;
         this.keyRotationEnabled = keyRotationEnabled;
         this.keyRotationLegacyKeyFallbackEnabled = legacyKeyFallbackEnabled;
+        this.aliasFailureThreshold =
+                Optional.ofNullable(System.getenv(ALIAS_FAILURE_THRESHOLD))
+                        .map(Integer::parseInt)
+                        .orElse(DEFAULT_ALIAS_FAILURE_THRESHOLD);
+        this.aliasCoolDownMillis =
+                TimeUnit.SECONDS.toMillis(
+                        Optional.ofNullable(System.getenv(ALIAS_COOL_DOWN_SECONDS))
+                                .map(Long::parseLong)
+                                .orElse(DEFAULT_ALIAS_COOL_DOWN_SECONDS));
+        this.hedgeDelayMillis =
+                Optional.ofNullable(System.getenv(HEDGE_DELAY_MILLIS))
+                        .map(Long::parseLong)
+                        .orElse(DEFAULT_HEDGE_DELAY_MILLIS);
+        this.decryptionTimeoutMillis =
+                Optional.ofNullable(System.getenv(DECRYPTION_TIMEOUT_MILLIS))
+                        .map(Long::parseLong)
+                        .orElse(DEFAULT_DECRYPTION_TIMEOUT_MILLIS);
     }
 
     @Override
@@ -101,12 +182,28 @@ public class KMSRSADecrypter implements JWEDecrypter {
         // Validate required JWE parts
         validateJwe(header, encryptedKey, iv, authTag);
 
+        // Decoded once and shared by every KMS request made for this JWE
+        SdkBytes ciphertextBlob = SdkBytes.fromByteArray(encryptedKey.decode());
+
         DecryptResponse decryptResponse;
-        if (keyRotationEnabled) {
+        if (keyRotationEnabled && kmsAsyncClient != null) {
+            LOGGER.info(
+                    "Key rotation enabled. Attempting to decrypt with key aliases concurrently.");
+            decryptResponse = decryptConcurrently(ciphertextBlob);
+
+            if (decryptResponse == null) {
+                String message =
+                        keyRotationLegacyKeyFallbackEnabled
+                                ? "Failed to decrypt with all key aliases and the legacy key."
+                                : "Failed to decrypt with all available key aliases.";
+                LOGGER.error(message);
+                throw new JOSEException(message);
+            }
+        } else if (keyRotationEnabled) {
             LOGGER.info("Key rotation enabled. Attempting to decrypt with key aliases.");
             // During a key rotation, we might receive JWTs encrypted with either the old or new
             // key.
-            decryptResponse = decryptWithKeyAliases(encryptedKey);
+            decryptResponse = decryptWithKeyAliases(ciphertextBlob);
 
             if (keyRotationLegacyKeyFallbackEnabled && decryptResponse == null) {
                 LOGGER.warn(
@@ -114,7 +211,7 @@ public class KMSRSADecrypter implements JWEDecrypter {
 
                 // Legacy Key fallback
                 try {
-                    decryptResponse = decryptWithLegacyKey(encryptedKey);
+                    decryptResponse = decryptWithLegacyKey(ciphertextBlob);
                 } catch (Exception e) {
                     // Do nothing
                 }
@@ -133,7 +230,7 @@ public class KMSRSADecrypter implements JWEDecrypter {
             }
         } else {
             // Legacy Key Route
-            decryptResponse = decryptWithLegacyKey(encryptedKey);
+            decryptResponse = decryptWithLegacyKey(ciphertextBlob);
         }
         SecretKey cek = new SecretKeySpec(decryptResponse.plaintext().asByteArray(), "AES");
         return ContentCryptoProvider.decrypt(
@@ -163,45 +260,241 @@ public class KMSRSADecrypter implements JWEDecrypter {
         }
     }
 
-    private DecryptResponse decryptWithLegacyKey(Base64URL encryptedKey) {
+    private DecryptResponse decryptWithLegacyKey(SdkBytes ciphertextBlob) {
         DecryptRequest decryptRequest =
                 DecryptRequest.builder()
                         .encryptionAlgorithm(EncryptionAlgorithmSpec.RSAES_OAEP_SHA_256)
-                        .ciphertextBlob(SdkBytes.fromByteArray(encryptedKey.decode()))
+                        .ciphertextBlob(ciphertextBlob)
                         .keyId(this.keyId)
                         .build();
         return this.kmsClient.decrypt(decryptRequest);
     }
 
-    private DecryptResponse decryptWithKeyAliases(Base64URL encryptedKey) {
-        String[] keyAliases = {
-            SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
-            SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
-            SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS
-        };
-
-        DecryptResponse decryptResponse = null;
-        for (String alias : keyAliases) {
+    private DecryptResponse decryptWithKeyAliases(SdkBytes ciphertextBlob) {
+        for (String alias : orderKeyAliases(System.currentTimeMillis())) {
+            AliasHealth health = aliasHealth.get(alias);
             try {
-                decryptResponse = kmsClient.decrypt(buildDecryptRequest(alias, encryptedKey));
+                DecryptResponse decryptResponse =
+                        kmsClient.decrypt(buildDecryptRequest("alias/" + alias, ciphertextBlob));
+                health.recordSuccess();
+                preferredAlias = alias;
                 LOGGER.info("Decryption successful with key alias: {}", alias);
                 return decryptResponse;
             } catch (Exception e) {
+                health.recordFailure(
+                        aliasFailureThreshold, System.currentTimeMillis() + aliasCoolDownMillis);
                 LOGGER.warn(
                         "Failed to decrypt with key alias: {}. Error: {}", alias, e.getMessage());
+                LOGGER.debug(
+                        "Key alias {} has {} successful and {} failed decryptions",
+                        alias,
+                        health.successes.get(),
+                        health.failures.get());
             }
         }
 
         eventProbe.counterMetric(ALL_ALIASES_UNAVAILABLE);
 
-        return decryptResponse;
+        return null;
     }
 
-    private DecryptRequest buildDecryptRequest(String keyAlias, Base64URL encryptedKey) {
+    private DecryptResponse decryptConcurrently(SdkBytes ciphertextBlob) {
+        List<DecryptionKey> decryptionKeys = new ArrayList<>();
+        for (String alias : orderKeyAliases(System.currentTimeMillis())) {
+            decryptionKeys.add(new DecryptionKey(alias, "alias/" + alias));
+        }
+        if (keyRotationLegacyKeyFallbackEnabled) {
+            decryptionKeys.add(new DecryptionKey(null, keyId));
+        }
+
+        return new DecryptionRace(decryptionKeys, ciphertextBlob).run();
+    }
+
+    /**
+     * Orders the aliases so that the one which last succeeded is tried first, followed by the
+     * remaining aliases in rotation order. Aliases in their failure cool-down are moved to the end
+     * rather than dropped, so a JWE encrypted to one of them can still be decrypted.
+     */
+    private List<String> orderKeyAliases(long now) {
+        List<String> coolingDownAliases = new ArrayList<>();
+        for (String alias : KEY_ALIASES) {
+            AliasHealth health = aliasHealth.get(alias);
+            boolean coolingDown = health.isCoolingDown(now);
+            if (coolingDown) {
+                coolingDownAliases.add(alias);
+            }
+            // Only a change is logged, rather than every decryption while an alias cools down
+            if (health.updateCoolingDown(coolingDown)) {
+                LOGGER.info(
+                        coolingDown
+                                ? "Key alias {} is cooling down after repeated failures"
+                                : "Key alias {} has finished cooling down",
+                        alias);
+            }
+        }
+
+        List<String> orderedAliases = new ArrayList<>(KEY_ALIASES.size());
+        String preferred = preferredAlias;
+        if (preferred != null && !coolingDownAliases.contains(preferred)) {
+            orderedAliases.add(preferred);
+        }
+        for (String alias : KEY_ALIASES) {
+            if (!orderedAliases.contains(alias) && !coolingDownAliases.contains(alias)) {
+                orderedAliases.add(alias);
+            }
+        }
+        orderedAliases.addAll(coolingDownAliases);
+        return orderedAliases;
+    }
+
+    private DecryptRequest buildDecryptRequest(String keyId, SdkBytes ciphertextBlob) {
         return DecryptRequest.builder()
-                .ciphertextBlob(SdkBytes.fromByteArray(encryptedKey.decode()))
+                .ciphertextBlob(ciphertextBlob)
                 .encryptionAlgorithm(RSAES_OAEP_SHA_256)
-                .keyId("alias/" + keyAlias)
+                .keyId(keyId)
                 .build();
     }
+
+    private record DecryptionKey(String alias, String keyId) {
+        private boolean isLegacyKey() {
+            return alias == null;
+        }
+    }
+
+    /**
+     * Sends a Decrypt request for each key in turn and completes with the first successful
+     * response, or null once every request has failed or the timeout has passed. The next request
+     * is sent as soon as the previous one fails, or after the hedge delay if it has not answered by
+     * then. Responses that arrive once the race is decided are ignored, so an alias is not marked
+     * as failing because it lost to another.
+     */
+    private final class DecryptionRace {
+        private final List<DecryptionKey> decryptionKeys;
+        private final SdkBytes ciphertextBlob;
+        private final CompletableFuture<DecryptResponse> result = new CompletableFuture<>();
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger aliasFailures = new AtomicInteger();
+        private final int aliasCount;
+
+        private DecryptionRace(List<DecryptionKey> decryptionKeys, SdkBytes ciphertextBlob) {
+            this.decryptionKeys = decryptionKeys;
+            this.ciphertextBlob = ciphertextBlob;
+            this.aliasCount =
+                    (int) decryptionKeys.stream().filter(key -> !key.isLegacyKey()).count();
+        }
+
+        private DecryptResponse run() {
+            start(0);
+            // A KMS request that never answers would otherwise block until the Lambda times out
+            DecryptResponse decryptResponse =
+                    result.completeOnTimeout(null, decryptionTimeoutMillis, TimeUnit.MILLISECONDS)
+                            .join();
+            if (decryptResponse == null && failed.get() < decryptionKeys.size()) {
+                LOGGER.warn("No KMS decryption completed within {} ms", decryptionTimeoutMillis);
+            }
+            return decryptResponse;
+        }
+
+        private void start(int index) {
+            // The hedge timer and a failed previous request may both try to start the same index
+            if (index >= decryptionKeys.size()
+                    || result.isDone()
+                    || !started.compareAndSet(index, index + 1)) {
+                return;
+            }
+
+            DecryptionKey decryptionKey = decryptionKeys.get(index);
+            CompletableFuture<DecryptResponse> response;
+            try {
+                response =
+                        kmsAsyncClient.decrypt(
+                                buildDecryptRequest(decryptionKey.keyId(), ciphertextBlob));
+            } catch (Exception e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            response.whenComplete(
+                    (decryptResponse, error) -> {
+                        if (result.isDone()) {
+                            return;
+                        }
+                        if (error == null) {
+                            onSuccess(decryptionKey, decryptResponse);
+                        } else {
+                            onFailure(decryptionKey, error);
+                            start(index + 1);
+                        }
+                    });
+
+            if (hedgeDelayMillis <= 0) {
+                start(index + 1);
+            } else if (index + 1 < decryptionKeys.size()) {
+                CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS)
+                        .execute(() -> start(index + 1));
+            }
+        }
+
+        private void onSuccess(DecryptionKey decryptionKey, DecryptResponse decryptResponse) {
+            if (decryptionKey.isLegacyKey()) {
+                LOGGER.info("Decryption successful with legacy key");
+            } else {
+                aliasHealth.get(decryptionKey.alias()).recordSuccess();
+                preferredAlias = decryptionKey.alias();
+                LOGGER.info("Decryption successful with key alias: {}", decryptionKey.alias());
+            }
+            result.complete(decryptResponse);
+        }
+
+        private void onFailure(DecryptionKey decryptionKey, Throwable error) {
+            if (decryptionKey.isLegacyKey()) {
+                LOGGER.warn("Failed to decrypt with legacy key. Error: {}", error.getMessage());
+            } else {
+                aliasHealth
+                        .get(decryptionKey.alias())
+                        .recordFailure(
+                                aliasFailureThreshold,
+                                System.currentTimeMillis() + aliasCoolDownMillis);
+                LOGGER.warn(
+                        "Failed to decrypt with key alias: {}. Error: {}",
+                        decryptionKey.alias(),
+                        error.getMessage());
+                if (aliasFailures.incrementAndGet() == aliasCount) {
+                    eventProbe.counterMetric(ALL_ALIASES_UNAVAILABLE);
+                }
+            }
+            if (failed.incrementAndGet() == decryptionKeys.size()) {
+                result.complete(null);
+            }
+        }
+    }
+
+    private static final class AliasHealth {
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicBoolean coolingDown = new AtomicBoolean();
+        private volatile long coolDownUntil;
+
+        private void recordSuccess() {
+            successes.incrementAndGet();
+            consecutiveFailures.set(0);
+            coolDownUntil = 0;
+        }
+
+        private void recordFailure(int failureThreshold, long coolDownUntil) {
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                this.coolDownUntil = coolDownUntil;
+            }
+        }
+
+        private boolean isCoolingDown(long now) {
+            return now < coolDownUntil;
+        }
+
+        /** Returns true if the alias was not already known to be in the given state. */
+        private boolean updateCoolingDown(boolean coolingDown) {
+            return this.coolingDown.compareAndSet(!coolingDown, coolingDown);
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Issues and verifies access tokens that carry their session id and expiry, protected by an HMAC.
+ *
+ * <p>A token has the form {@code <session id>.<expiry epoch second>.<nonce>.<mac>}, with the nonce
+ * and MAC base64url encoded. The HMAC-SHA256 key is read, base64 encoded, from the {@value
+ * #HMAC_KEY_SECRET_NAME} secret through the secrets provider's cache, so the cache decides how
+ * quickly a rotated key is picked up. The decoded key is kept until the secret value changes.
+ */
+public class MacAccessTokenService {
+    public static final String HMAC_KEY_SECRET_NAME = "AccessTokenHmacKey";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String SEPARATOR = ".";
+    private static final int TOKEN_PARTS = 4;
+    private static final int NONCE_LENGTH = 16;
+    private static final Base64.Encoder BASE64_URL_ENCODER =
+            Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_URL_DECODER = Base64.getUrlDecoder();
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private final Supplier<String> keySupplier;
+    private String encodedKey;
+    private SecretKeySpec key;
+
+    public MacAccessTokenService(ConfigurationService configurationService) {
+        this(() -> configurationService.getSecretValue(HMAC_KEY_SECRET_NAME));
+    }
+
+    MacAccessTokenService(Supplier<String> keySupplier) {
+        this.keySupplier = keySupplier;
+    }
+
+    /** Returns true if the token value has the form issued by this service. */
+    public static boolean isMacAccessToken(String tokenValue) {
+        if (tokenValue == null) {
+            return false;
+        }
+        String[] parts = tokenValue.split("\\.", -1);
+        return parts.length == TOKEN_PARTS && Arrays.stream(parts).noneMatch(String::isEmpty);
+    }
+
+    public String createToken(UUID sessionId, long expiryEpochSecond) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        SECURE_RANDOM.nextBytes(nonce);
+        String claims =
+                sessionId
+                        + SEPARATOR
+                        + expiryEpochSecond
+                        + SEPARATOR
+                        + BASE64_URL_ENCODER.encodeToString(nonce);
+        return claims + SEPARATOR + BASE64_URL_ENCODER.encodeToString(computeMac(claims));
+    }
+
+    /**
+     * Returns the session id and expiry carried by the token, or an empty optional if the token is
+     * malformed or its MAC does not match. The expiry is not checked.
+     */
+    public Optional<VerifiedAccessToken> verifyToken(String tokenValue) {
+        if (!isMacAccessToken(tokenValue)) {
+            return Optional.empty();
+        }
+        int macSeparator = tokenValue.lastIndexOf(SEPARATOR);
+        String claims = tokenValue.substring(0, macSeparator);
+        byte[] mac;
+        try {
+            mac = BASE64_URL_DECODER.decode(tokenValue.substring(macSeparator + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(computeMac(claims), mac)) {
+            return Optional.empty();
+        }
+        String[] parts = claims.split("\\.");
+        // The claims were written by createToken, as the MAC matches, so they parse
+        return Optional.of(
+                new VerifiedAccessToken(UUID.fromString(parts[0]), Long.parseLong(parts[1])));
+    }
+
+    private byte[] computeMac(String claims) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(getKey());
+            return mac.doFinal(claims.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute the access token MAC", e);
+        }
+    }
+
+    private synchronized SecretKeySpec getKey() {
+        String currentEncodedKey = keySupplier.get();
+        if (currentEncodedKey == null) {
+            throw new IllegalStateException("The " + HMAC_KEY_SECRET_NAME + " secret has no value");
+        }
+        if (!currentEncodedKey.equals(encodedKey)) {
+            key = new SecretKeySpec(Base64.getDecoder().decode(currentEncodedKey), MAC_ALGORITHM);
+            encodedKey = currentEncodedKey;
+        }
+        return key;
+    }
+
+    public record VerifiedAccessToken(UUID sessionId, long expiryEpochSecond) {}
+}
@@ -2,6 +2,7 @@ package uk.gov.di.ipv.cri.common.library.service;
 
 import com.nimbusds.oauth2.sdk.token.AccessToken;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import uk.gov.di.ipv.cri.common.library.annotations.ExcludeFromGeneratedCoverageReport;
 import uk.gov.di.ipv.cri.common.library.domain.SessionRequest;
 import uk.gov.di.ipv.cri.common.library.exception.AccessTokenExpiredException;
@@ -16,18 +17,32 @@ import uk.gov.di.ipv.cri.common.library.util.retry.RetryConfig;
 import uk.gov.di.ipv.cri.common.library.util.retry.RetryManager;
 import uk.gov.di.ipv.cri.common.library.util.retry.Retryable;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 import static uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem.ACCESS_TOKEN_INDEX;
 import static uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem.AUTHORIZATION_CODE_INDEX;
 
 public class SessionService {
     private static final String SESSION_TABLE_NAME = "session-common-cri-api";
+    private static final String COMPOUND_AUTHORIZATION_CODE =
+            "ENV_VAR_FEATURE_FLAG_COMPOUND_AUTHORIZATION_CODE";
+    private static final String AUTHORIZATION_CODE_SEPARATOR = ".";
+    private static final String MAC_ACCESS_TOKEN = "ENV_VAR_FEATURE_FLAG_MAC_ACCESS_TOKEN";
+    private static final TableSchema<SessionItem> SESSION_ITEM_SCHEMA =
+            TableSchema.fromBean(SessionItem.class);
     private final ConfigurationService configurationService;
     private final DataStore<SessionItem> dataStore;
     private final Clock clock;
+    private final boolean compoundAuthorizationCodeEnabled;
+    private final MacAccessTokenService macAccessTokenService;
+    private final ThreadLocal<Map<String, SessionItem>> requestScopedSessions = new ThreadLocal<>();
 
     @ExcludeFromGeneratedCoverageReport
     public SessionService(
@@ -47,9 +62,67 @@ public class SessionService {
             DataStore<SessionItem> dataStore,
             ConfigurationService configurationService,
             Clock clock) {
+        this(
+                dataStore,
+                configurationService,
+                clock,
+                Boolean.parseBoolean(System.getenv(COMPOUND_AUTHORIZATION_CODE)));
+    }
+
+    /**
+     * @param compoundAuthorizationCodeEnabled when true, authorization codes are issued as {@code
+     *     <session id>.<random value>}, so the session can be read by its key rather than through
+     *     the authorization code index. Codes in either format are accepted regardless.
+     */
+    public SessionService(
+            DataStore<SessionItem> dataStore,
+            ConfigurationService configurationService,
+            Clock clock,
+            boolean compoundAuthorizationCodeEnabled) {
+        this(
+                dataStore,
+                configurationService,
+                clock,
+                compoundAuthorizationCodeEnabled,
+                Boolean.parseBoolean(System.getenv(MAC_ACCESS_TOKEN))
+                        ? new MacAccessTokenService(configurationService)
+                        : null);
+    }
+
+    /**
+     * @param macAccessTokenService when set, access tokens issued by it are verified and the
+     *     session read by its key. When null, every access token is looked up through the access
+     *     token index.
+     */
+    public SessionService(
+            DataStore<SessionItem> dataStore,
+            ConfigurationService configurationService,
+            Clock clock,
+            boolean compoundAuthorizationCodeEnabled,
+            MacAccessTokenService macAccessTokenService) {
         this.dataStore = dataStore;
         this.configurationService = configurationService;
         this.clock = clock;
+        this.compoundAuthorizationCodeEnabled = compoundAuthorizationCodeEnabled;
+        this.macAccessTokenService = macAccessTokenService;
+    }
+
+    /**
+     * Serves repeat reads of a session by id from memory until the returned scope is closed.
+     * Sessions are cached by the thread that opened the scope, and {@link #saveSession} and
+     * {@link #updateSession} keep the cached copy current. Each read returns its own copy of the
+     * session, so a change that is not saved is not seen by later reads, as without a scope. Use
+     * one scope per request, so that changes made by other requests are not hidden:
+     *
+     * <pre>{@code
+     * try (SessionService.RequestScope requestScope = sessionService.openRequestScope()) {
+     *     ...
+     * }
+     * }</pre>
+     */
+    public RequestScope openRequestScope() {
+        requestScopedSessions.set(new HashMap<>());
+        return new RequestScope();
     }
 
     public UUID saveSession(SessionRequest sessionRequest) {
@@ -69,16 +142,29 @@ public class SessionService {
         setSessionItemsToLogging(sessionItem);
 
         dataStore.create(sessionItem);
+        cacheSession(sessionItem);
         return sessionItem.getSessionId();
     }
 
     public void updateSession(SessionItem sessionItem) {
         setSessionItemsToLogging(sessionItem);
-        dataStore.update(sessionItem);
+        try {
+            dataStore.update(sessionItem);
+        } catch (RuntimeException e) {
+            // The stored session is unknown after a failed update, so it is read again next time
+            Optional.ofNullable(sessionItem.getSessionId())
+                    .ifPresent(sessionId -> evictSession(sessionId.toString()));
+            throw e;
+        }
+        cacheSession(sessionItem);
     }
 
     public void createAuthorizationCode(SessionItem session) {
-        session.setAuthorizationCode(UUID.randomUUID().toString());
+        String randomValue = UUID.randomUUID().toString();
+        session.setAuthorizationCode(
+                compoundAuthorizationCodeEnabled
+                        ? session.getSessionId() + AUTHORIZATION_CODE_SEPARATOR + randomValue
+                        : randomValue);
         session.setAuthorizationCodeExpiryDate(
                 configurationService.getAuthorizationCodeExpirationEpoch());
         updateSession(session);
@@ -91,7 +177,7 @@ public class SessionService {
             throw new SessionNotFoundException("session id empty");
         }
 
-        SessionItem sessionItem = dataStore.getItem(sessionId);
+        SessionItem sessionItem = readSession(sessionId);
         setSessionItemsToLogging(sessionItem);
         if (sessionItem == null) {
             throw new SessionNotFoundException("session not found");
@@ -104,6 +190,41 @@ public class SessionService {
         return sessionItem;
     }
 
+    private SessionItem readSession(String sessionId) {
+        Map<String, SessionItem> cachedSessions = requestScopedSessions.get();
+        if (cachedSessions == null) {
+            return dataStore.getItem(sessionId);
+        }
+        SessionItem cachedSession = cachedSessions.get(sessionId);
+        if (cachedSession != null) {
+            return copyOf(cachedSession);
+        }
+        SessionItem sessionItem = dataStore.getItem(sessionId);
+        if (sessionItem != null) {
+            cachedSessions.put(sessionId, copyOf(sessionItem));
+        }
+        return sessionItem;
+    }
+
+    private void cacheSession(SessionItem sessionItem) {
+        Map<String, SessionItem> cachedSessions = requestScopedSessions.get();
+        if (cachedSessions != null && sessionItem.getSessionId() != null) {
+            cachedSessions.put(sessionItem.getSessionId().toString(), copyOf(sessionItem));
+        }
+    }
+
+    // Copied through the table schema, so the copy matches what a fresh read would return
+    private static SessionItem copyOf(SessionItem sessionItem) {
+        return SESSION_ITEM_SCHEMA.mapToItem(SESSION_ITEM_SCHEMA.itemToMap(sessionItem, true));
+    }
+
+    private void evictSession(String sessionId) {
+        Map<String, SessionItem> cachedSessions = requestScopedSessions.get();
+        if (cachedSessions != null) {
+            cachedSessions.remove(sessionId);
+        }
+    }
+
     private void setSessionItemsToLogging(SessionItem sessionItem) {
         Optional.ofNullable(sessionItem)
                 .ifPresent(
@@ -122,7 +243,7 @@ public class SessionService {
     }
 
     public SessionItem getSession(String sessionId) {
-        SessionItem sessionItem = dataStore.getItem(sessionId);
+        SessionItem sessionItem = readSession(sessionId);
         setSessionItemsToLogging(sessionItem);
         return sessionItem;
     }
@@ -130,17 +251,23 @@ public class SessionService {
     public SessionItem getSessionByAccessToken(AccessToken accessToken)
             throws SessionExpiredException, AccessTokenExpiredException, SessionNotFoundException {
 
-        RetryConfig retryConfig = getRetryConfig(500, 3, true);
-        Retryable<SessionItem> retryable =
-                () ->
-                        getSessionByGsiIndex(
-                                ACCESS_TOKEN_INDEX,
-                                accessToken.toAuthorizationHeader(),
-                                "access token");
-
-        SessionItem sessionItem = RetryManager.execute(retryConfig, retryable);
-        // Re-fetch our session directly to avoid problems with projections
-        sessionItem = validateSessionId(String.valueOf(sessionItem.getSessionId()));
+        SessionItem sessionItem;
+        if (macAccessTokenService != null
+                && MacAccessTokenService.isMacAccessToken(accessToken.getValue())) {
+            sessionItem = getSessionByMacAccessToken(accessToken);
+        } else {
+            RetryConfig retryConfig = getRetryConfig(500, 3, true);
+            Retryable<SessionItem> retryable =
+                    () ->
+                            getSessionByGsiIndex(
+                                    ACCESS_TOKEN_INDEX,
+                                    accessToken.toAuthorizationHeader(),
+                                    "access token");
+
+            sessionItem = RetryManager.execute(retryConfig, retryable);
+            // Re-fetch our session directly to avoid problems with projections
+            sessionItem = validateSessionId(String.valueOf(sessionItem.getSessionId()));
+        }
         if (sessionItem.getAccessTokenExpiryDate() < clock.instant().getEpochSecond()) {
             throw new AccessTokenExpiredException("access code expired");
         }
@@ -153,15 +280,26 @@ public class SessionService {
                     AuthorizationCodeExpiredException,
                     SessionNotFoundException {
 
-        RetryConfig retryConfig = getRetryConfig(500, 3, true);
-        Retryable<SessionItem> retryable =
-                () ->
-                        getSessionByGsiIndex(
-                                AUTHORIZATION_CODE_INDEX, authCode, "authorization code");
+        Optional<String> sessionId = getSessionIdFromAuthorizationCode(authCode);
+        SessionItem sessionItem;
+        if (sessionId.isPresent()) {
+            sessionItem =
+                    getSessionByKey(
+                            sessionId.get(),
+                            SessionItem::getAuthorizationCode,
+                            authCode,
+                            "authorization code");
+        } else {
+            RetryConfig retryConfig = getRetryConfig(500, 3, true);
+            Retryable<SessionItem> retryable =
+                    () ->
+                            getSessionByGsiIndex(
+                                    AUTHORIZATION_CODE_INDEX, authCode, "authorization code");
 
-        SessionItem sessionItem = RetryManager.execute(retryConfig, retryable);
-        // Re-fetch our session directly to avoid problems with projections
-        sessionItem = validateSessionId(String.valueOf(sessionItem.getSessionId()));
+            sessionItem = RetryManager.execute(retryConfig, retryable);
+            // Re-fetch our session directly to avoid problems with projections
+            sessionItem = validateSessionId(String.valueOf(sessionItem.getSessionId()));
+        }
         if (sessionItem.getAuthorizationCodeExpiryDate() < clock.instant().getEpochSecond()) {
             throw new AuthorizationCodeExpiredException("authorization code expired");
         }
@@ -169,6 +307,69 @@ public class SessionService {
         return sessionItem;
     }
 
+    private Optional<String> getSessionIdFromAuthorizationCode(String authCode) {
+        int separator = authCode == null ? -1 : authCode.indexOf(AUTHORIZATION_CODE_SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        String sessionId = authCode.substring(0, separator);
+        try {
+            UUID.fromString(sessionId);
+            return Optional.of(sessionId);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private SessionItem getSessionByMacAccessToken(AccessToken accessToken)
+            throws SessionExpiredException {
+        MacAccessTokenService.VerifiedAccessToken verifiedAccessToken =
+                macAccessTokenService
+                        .verifyToken(accessToken.getValue())
+                        .orElseThrow(
+                                () ->
+                                        new SessionNotFoundException(
+                                                "no session found with that access token"));
+        // Expired tokens are turned away before the session is read
+        if (verifiedAccessToken.expiryEpochSecond() < clock.instant().getEpochSecond()) {
+            throw new AccessTokenExpiredException("access code expired");
+        }
+        // The session holds the last token issued for it, so a replaced token is rejected
+        return getSessionByKey(
+                verifiedAccessToken.sessionId().toString(),
+                SessionItem::getAccessToken,
+                accessToken.toAuthorizationHeader(),
+                "access token");
+    }
+
+    /**
+     * Reads a session by its key and checks that the stored value, such as the authorization
+     * code, matches the one presented.
+     */
+    private SessionItem getSessionByKey(
+            String sessionId,
+            Function<SessionItem, String> storedValue,
+            String presentedValue,
+            String valueLabel)
+            throws SessionExpiredException {
+        // A consistent read sees a value written moments ago, which the index may not yet have
+        SessionItem sessionItem = dataStore.getItemWithConsistentRead(sessionId);
+        if (sessionItem == null
+                || storedValue.apply(sessionItem) == null
+                || !MessageDigest.isEqual(
+                        storedValue.apply(sessionItem).getBytes(StandardCharsets.UTF_8),
+                        presentedValue.getBytes(StandardCharsets.UTF_8))) {
+            throw new SessionNotFoundException(
+                    String.format("no session found with that %s", valueLabel));
+        }
+        setSessionItemsToLogging(sessionItem);
+        if (sessionItem.getExpiryDate() < clock.instant().getEpochSecond()) {
+            throw new SessionExpiredException("session expired");
+        }
+        cacheSession(sessionItem);
+        return sessionItem;
+    }
+
     private RetryConfig getRetryConfig(int delayMs, int maxAttempts, boolean exponential) {
         return new RetryConfig.Builder()
                 .delayBetweenAttempts(delayMs)
@@ -191,4 +392,14 @@ public class SessionService {
             }
         }
     }
+
+    /** Ends request-scoped caching of sessions on the current thread when closed. */
+    public final class RequestScope implements AutoCloseable {
+        private RequestScope() {}
+
+        @Override
+        public void close() {
+            requestScopedSessions.remove();
+        }
+    }
 }
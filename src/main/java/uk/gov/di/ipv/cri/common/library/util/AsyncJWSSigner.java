@@ -0,0 +1,20 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link JWSSigner} that can also sign without blocking the calling thread, letting {@link
+ * SignedJWTFactory#createSignedJwts} keep several signing requests in flight.
+ */
+public interface AsyncJWSSigner extends JWSSigner {
+
+    /**
+     * Signs the input, completing exceptionally with a {@link com.nimbusds.jose.JOSEException}
+     * if the signature cannot be produced.
+     */
+    CompletableFuture<Base64URL> signAsync(JWSHeader header, byte[] signingInput);
+}
@@ -0,0 +1,56 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small thread-safe, size-bounded cache that evicts the least recently used entry once full.
+ *
+ * <p>Intended for values that are expensive to build but keyed by their own source material, so a
+ * change to that material produces a new key rather than requiring explicit invalidation.
+ */
+public class BoundedCache<K, V> {
+    private final Map<K, V> entries;
+
+    public BoundedCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.entries = new LruMap<>(maxSize);
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
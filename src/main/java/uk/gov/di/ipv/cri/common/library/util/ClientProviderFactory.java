@@ -10,18 +10,27 @@ import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
 import software.amazon.awssdk.awscore.defaultsmode.DefaultsMode;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
 import software.amazon.awssdk.http.crt.AwsCrtHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.acm.AcmClient;
 import software.amazon.awssdk.services.acm.AcmClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.KmsAsyncClientBuilder;
 import software.amazon.awssdk.services.kms.KmsClient;
 import software.amazon.awssdk.services.kms.KmsClientBuilder;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClientBuilder;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.SqsClientBuilder;
 import software.amazon.awssdk.services.ssm.SsmClient;
@@ -54,10 +63,16 @@ public class ClientProviderFactory {
     // Optmize for within the same region
     private static final DefaultsMode DEFAULTS_MODE = DefaultsMode.IN_REGION;
 
+    // AWS SDK CRT Client (ASYNC) - only created if an async client is requested
+    private SdkAsyncHttpClient sdkAsyncHttpClient;
+
     // All clients are Lazy init to prevent creating them when not used
     private KmsClient kmsClient;
+    private KmsAsyncClient kmsAsyncClient;
     private SqsClient sqsClient;
+    private SqsAsyncClient sqsAsyncClient;
     private DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient;
     private SsmClient ssmClient;
     private SSMProvider ssmProvider;
     private SecretsProvider secretsProvider;
@@ -122,6 +137,31 @@ public class ClientProviderFactory {
         return kmsClient;
     }
 
+    public KmsAsyncClient getKmsAsyncClient() {
+
+        if (null == kmsAsyncClient) {
+            KmsAsyncClientBuilder kmsAsyncClientBuilder =
+                    KmsAsyncClient.builder()
+                            .region(awsRegion)
+                            .httpClient(getSdkAsyncHttpClient())
+                            .credentialsProvider(awsCredentialsProvider)
+                            .defaultsMode(DEFAULTS_MODE);
+
+            if (addOpenTelemetryExecutionInterceptors) {
+                kmsAsyncClientBuilder.overrideConfiguration(
+                        ClientOverrideConfiguration.builder()
+                                .addExecutionInterceptor(
+                                        AwsSdkTelemetry.create(GlobalOpenTelemetry.get())
+                                                .createExecutionInterceptor())
+                                .build());
+            }
+
+            kmsAsyncClient = kmsAsyncClientBuilder.build();
+        }
+
+        return kmsAsyncClient;
+    }
+
     public SqsClient getSqsClient() {
 
         if (null == sqsClient) {
@@ -151,6 +191,35 @@ public class ClientProviderFactory {
         return sqsClient;
     }
 
+    public SqsAsyncClient getSqsAsyncClient() {
+
+        if (null == sqsAsyncClient) {
+            SqsAsyncClientBuilder sqsAsyncClientBuilder =
+                    SqsAsyncClient.builder()
+                            .region(awsRegion)
+                            .httpClient(getSdkAsyncHttpClient())
+                            .credentialsProvider(awsCredentialsProvider)
+                            .defaultsMode(DEFAULTS_MODE);
+
+            if (addOpenTelemetryExecutionInterceptors) {
+                OpenTelemetry openTelemetry = GlobalOpenTelemetry.get();
+                AwsSdkTelemetry awsSdkTelemetry = AwsSdkTelemetry.create(openTelemetry);
+
+                sqsAsyncClientBuilder.overrideConfiguration(
+                        ClientOverrideConfiguration.builder()
+                                .addExecutionInterceptor(
+                                        awsSdkTelemetry.createExecutionInterceptor())
+                                .build());
+
+                sqsAsyncClient = awsSdkTelemetry.wrap(sqsAsyncClientBuilder.build());
+            } else {
+                sqsAsyncClient = sqsAsyncClientBuilder.build();
+            }
+        }
+
+        return sqsAsyncClient;
+    }
+
     public DynamoDbEnhancedClient getDynamoDbEnhancedClient() {
         if (null == dynamoDbEnhancedClient) {
             DynamoDbClientBuilder dynamoDbClientBuilder =
@@ -178,6 +247,35 @@ public class ClientProviderFactory {
         return dynamoDbEnhancedClient;
     }
 
+    public DynamoDbEnhancedAsyncClient getDynamoDbEnhancedAsyncClient() {
+        if (null == dynamoDbEnhancedAsyncClient) {
+            DynamoDbAsyncClientBuilder dynamoDbAsyncClientBuilder =
+                    DynamoDbAsyncClient.builder()
+                            .region(awsRegion)
+                            .httpClient(getSdkAsyncHttpClient())
+                            .credentialsProvider(awsCredentialsProvider)
+                            .defaultsMode(DEFAULTS_MODE);
+
+            if (addOpenTelemetryExecutionInterceptors) {
+                dynamoDbAsyncClientBuilder.overrideConfiguration(
+                        ClientOverrideConfiguration.builder()
+                                .addExecutionInterceptor(
+                                        AwsSdkTelemetry.create(GlobalOpenTelemetry.get())
+                                                .createExecutionInterceptor())
+                                .build());
+            }
+
+            DynamoDbAsyncClient dynamoDbAsyncClient = dynamoDbAsyncClientBuilder.build();
+
+            dynamoDbEnhancedAsyncClient =
+                    DynamoDbEnhancedAsyncClient.builder()
+                            .dynamoDbClient(dynamoDbAsyncClient)
+                            .build();
+        }
+
+        return dynamoDbEnhancedAsyncClient;
+    }
+
     public SsmClient getSsmClient() {
 
         if (null == ssmClient) {
@@ -234,6 +332,14 @@ public class ClientProviderFactory {
         return secretsProvider;
     }
 
+    private SdkAsyncHttpClient getSdkAsyncHttpClient() {
+        if (null == sdkAsyncHttpClient) {
+            // Shared by all async clients in the same way as the sync client
+            sdkAsyncHttpClient = AwsCrtAsyncHttpClient.builder().maxConcurrency(100).build();
+        }
+        return sdkAsyncHttpClient;
+    }
+
     // ThreadLocalRandom not used cryptographically here
     @java.lang.SuppressWarnings("java:S2245")
     private int generateRandomMaxAgeInSeconds() {
@@ -2,40 +2,111 @@ package uk.gov.di.ipv.cri.common.library.util;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.jwk.JWK;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.JWKS;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.Key;
 import uk.gov.di.ipv.cri.common.library.exception.JWKSRequestException;
 
+import java.text.ParseException;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class JwkKeyCache {
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final Logger LOGGER = LoggerFactory.getLogger(JwkKeyCache.class);
 
+    private static final String STALE_WHILE_REVALIDATE_SECONDS =
+            "JWKS_CACHE_STALE_WHILE_REVALIDATE_SECONDS";
+    private static final String REFRESH_AHEAD_SECONDS = "JWKS_CACHE_REFRESH_AHEAD_SECONDS";
+    private static final String FAILURE_BACKOFF_SECONDS = "JWKS_CACHE_FAILURE_BACKOFF_SECONDS";
+    private static final String FAILURE_BACKOFF_MAX_SECONDS =
+            "JWKS_CACHE_FAILURE_BACKOFF_MAX_SECONDS";
+    private static final String UNKNOWN_KID_SECONDS = "JWKS_CACHE_UNKNOWN_KID_SECONDS";
+    private static final long DEFAULT_FAILURE_BACKOFF_SECONDS = 1;
+    private static final long DEFAULT_FAILURE_BACKOFF_MAX_SECONDS = 60;
+    private static final long DEFAULT_UNKNOWN_KID_SECONDS = 30;
+    private static final int MAX_UNKNOWN_KIDS = 256;
+    // The worker thread is only started by the first background refresh
+    private static final Executor BACKGROUND_REFRESH_EXECUTOR =
+            Executors.newSingleThreadExecutor(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "jwks-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
     private final boolean usePublicJwk;
     private final JwkRequest jwkRequest;
+    private final Executor refreshExecutor;
+    private final long staleWhileRevalidateMillis;
+    private final long refreshAheadMillis;
+    private final long failureBackoffMillis;
+    private final long failureBackoffMaxMillis;
+    private final long unknownKidMillis;
 
-    private final Map<String, JWKS> cachedJwks = new HashMap<>();
+    private final Map<String, IndexedJwks> cachedJwks = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<IndexedJwks>> inFlightRefreshes =
+            new ConcurrentHashMap<>();
+    private final Map<String, FailureBackoff> failureBackoffs = new ConcurrentHashMap<>();
+    // Bounded so that a client sending random kids cannot grow it without limit
+    private final BoundedCache<String, Long> unknownKids = new BoundedCache<>(MAX_UNKNOWN_KIDS);
 
     public JwkKeyCache() {
         this(new JwkRequest());
     }
 
     public JwkKeyCache(JwkRequest jwkRequest) {
+        this(jwkRequest, BACKGROUND_REFRESH_EXECUTOR);
+    }
+
+    JwkKeyCache(JwkRequest jwkRequest, Executor refreshExecutor) {
         this.jwkRequest = jwkRequest;
+        this.refreshExecutor = refreshExecutor;
         usePublicJwk =
                 Boolean.parseBoolean(
                         Optional.ofNullable(System.getenv("ENV_VAR_FEATURE_CONSUME_PUBLIC_JWK"))
                                 .orElse("false"));
+        staleWhileRevalidateMillis = getMillisFromSecondsEnv(STALE_WHILE_REVALIDATE_SECONDS, 0);
+        refreshAheadMillis = getMillisFromSecondsEnv(REFRESH_AHEAD_SECONDS, 0);
+        failureBackoffMillis =
+                getMillisFromSecondsEnv(FAILURE_BACKOFF_SECONDS, DEFAULT_FAILURE_BACKOFF_SECONDS);
+        failureBackoffMaxMillis =
+                getMillisFromSecondsEnv(
+                        FAILURE_BACKOFF_MAX_SECONDS, DEFAULT_FAILURE_BACKOFF_MAX_SECONDS);
+        unknownKidMillis =
+                getMillisFromSecondsEnv(UNKNOWN_KID_SECONDS, DEFAULT_UNKNOWN_KID_SECONDS);
     }
 
     public Optional<String> getBase64JwkForKid(String publicJwkEndpoint, String kid) {
+        return findJwksForKid(publicJwkEndpoint, kid)
+                .map(indexedJwks -> indexedJwks.base64JwksByKid().get(kid));
+    }
+
+    /**
+     * Returns the parsed signing key for a kid, ready to build a verifier from. Keys are parsed
+     * once when the key set is fetched, rather than on every lookup.
+     */
+    public Optional<JWK> getSigningJwkForKid(String publicJwkEndpoint, String kid) {
+        return findJwksForKid(publicJwkEndpoint, kid)
+                .map(indexedJwks -> indexedJwks.signingJwksByKid().get(kid));
+    }
+
+    // Remove when the feature flag is permanent
+    public boolean isUsingPublicJwk() {
+        return usePublicJwk;
+    }
+
+    private Optional<IndexedJwks> findJwksForKid(String publicJwkEndpoint, String kid) {
         if (!usePublicJwk) {
             LOGGER.info("Using public JWKs endpoint is disabled");
             return Optional.empty();
@@ -46,52 +117,220 @@ public class JwkKeyCache {
         }
 
         LOGGER.info("Using JWKs endpoint: {}", publicJwkEndpoint);
-        JWKS cachedJwksEndpoint = cachedJwks.get(publicJwkEndpoint);
-
-        if (cachedJwksEndpoint == null
-                || System.currentTimeMillis()
-                        > cachedJwksEndpoint.getLastUpdated()
-                                + cachedJwksEndpoint.getCacheControl()) {
-            JWKS newJwks;
-            try {
-                newJwks = jwkRequest.callJWKSEndpoint(publicJwkEndpoint);
-            } catch (JWKSRequestException e) {
-                LOGGER.error("Failed to call JWK endpoint ({})", publicJwkEndpoint, e);
+        IndexedJwks jwks = cachedJwks.get(publicJwkEndpoint);
+        long now = System.currentTimeMillis();
+
+        if (jwks == null || now > getExpiry(jwks) + staleWhileRevalidateMillis) {
+            jwks = refreshJwks(publicJwkEndpoint, jwks);
+            if (jwks == null) {
                 return Optional.empty();
             }
-            newJwks.setLastUpdated(System.currentTimeMillis());
-            newJwks.setCacheControl(
-                    TimeUnit.SECONDS.toMillis(newJwks.getMaxAgeFromCacheControlHeader()));
-            LOGGER.info(
-                    "JWKs cache has been updated to '{}' seconds",
-                    newJwks.getMaxAgeFromCacheControlHeader());
-            cachedJwks.put(publicJwkEndpoint, newJwks);
+        } else if (now > getExpiry(jwks)) {
+            LOGGER.info("Using stale JWKs from {} while refreshing", publicJwkEndpoint);
+            refreshJwksInBackground(publicJwkEndpoint);
+        } else if (now > getExpiry(jwks) - refreshAheadMillis) {
+            LOGGER.info("Using locally cached JWKs from {} and refreshing", publicJwkEndpoint);
+            refreshJwksInBackground(publicJwkEndpoint);
         } else {
             LOGGER.info("Using locally cached JWKs from {}", publicJwkEndpoint);
         }
-        return getSigningKeyForKid(cachedJwks.get(publicJwkEndpoint), kid).map(this::toBase64);
+
+        if (!jwks.containsKid(kid)) {
+            return findUnknownKid(publicJwkEndpoint, kid, jwks);
+        }
+        return Optional.of(jwks);
     }
 
-    // Remove when the feature flag is permanent
-    public boolean isUsingPublicJwk() {
-        return usePublicJwk;
+    private long getExpiry(IndexedJwks indexedJwks) {
+        return indexedJwks.jwks().getLastUpdated() + indexedJwks.jwks().getCacheControl();
     }
 
-    private Optional<Key> getSigningKeyForKid(JWKS jwks, String kid) {
-        if (jwks == null || jwks.getKeys() == null) {
+    /**
+     * Handles a kid missing from the cached key set. The key set is refreshed in case the client
+     * has rotated keys, unless it was fetched within the unknown kid window. Kids still missing
+     * afterwards are remembered for that window so they do not trigger further refreshes.
+     */
+    private Optional<IndexedJwks> findUnknownKid(
+            String publicJwkEndpoint, String kid, IndexedJwks jwks) {
+        String unknownKid = publicJwkEndpoint + "#" + kid;
+        long now = System.currentTimeMillis();
+        Long unknownUntil = unknownKids.get(unknownKid);
+        if (unknownUntil != null && now < unknownUntil) {
+            LOGGER.info("kid {} was recently not found in JWKs from {}", kid, publicJwkEndpoint);
             return Optional.empty();
         }
-        return jwks.getKeys().stream()
-                .filter(entry -> entry.getUse().equals("sig") && entry.getKid().equals(kid))
-                .findFirst();
+
+        if (now - jwks.jwks().getLastUpdated() >= unknownKidMillis) {
+            LOGGER.info("kid {} not found in JWKs from {}, refreshing", kid, publicJwkEndpoint);
+            IndexedJwks refreshedJwks = refreshJwks(publicJwkEndpoint, jwks);
+            if (refreshedJwks != null && refreshedJwks.containsKid(kid)) {
+                return Optional.of(refreshedJwks);
+            }
+        }
+        unknownKids.put(unknownKid, now + unknownKidMillis);
+        return Optional.empty();
+    }
+
+    /**
+     * Refreshes the key set for an endpoint, allowing only one fetch per endpoint to be in flight.
+     * Callers that find a refresh already running are served the previous key set if there is
+     * one, otherwise they wait for the running fetch to complete.
+     */
+    private IndexedJwks refreshJwks(String publicJwkEndpoint, IndexedJwks previousJwks) {
+        CompletableFuture<IndexedJwks> refresh = new CompletableFuture<>();
+        CompletableFuture<IndexedJwks> inFlightRefresh =
+                inFlightRefreshes.putIfAbsent(publicJwkEndpoint, refresh);
+
+        if (inFlightRefresh != null) {
+            if (previousJwks != null) {
+                LOGGER.info(
+                        "JWKs refresh already in progress for {}, using previous JWKs",
+                        publicJwkEndpoint);
+                return previousJwks;
+            }
+            LOGGER.info("Waiting for in progress JWKs refresh for {}", publicJwkEndpoint);
+            return inFlightRefresh.join();
+        }
+        return completeRefresh(publicJwkEndpoint, refresh);
+    }
+
+    private void refreshJwksInBackground(String publicJwkEndpoint) {
+        CompletableFuture<IndexedJwks> refresh = new CompletableFuture<>();
+        if (inFlightRefreshes.putIfAbsent(publicJwkEndpoint, refresh) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> completeRefresh(publicJwkEndpoint, refresh));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Unable to schedule JWKs refresh for {}", publicJwkEndpoint, e);
+            inFlightRefreshes.remove(publicJwkEndpoint, refresh);
+            refresh.complete(null);
+        }
     }
 
-    private String toBase64(Key key) {
+    private IndexedJwks completeRefresh(
+            String publicJwkEndpoint, CompletableFuture<IndexedJwks> refresh) {
+        IndexedJwks newJwks = null;
         try {
-            String str = OBJECT_MAPPER.writeValueAsString(key);
-            return Base64.getEncoder().encodeToString(str.getBytes());
+            newJwks = fetchJwks(publicJwkEndpoint);
+            return newJwks;
+        } finally {
+            inFlightRefreshes.remove(publicJwkEndpoint, refresh);
+            refresh.complete(newJwks);
+        }
+    }
+
+    private IndexedJwks fetchJwks(String publicJwkEndpoint) {
+        FailureBackoff failureBackoff = failureBackoffs.get(publicJwkEndpoint);
+        if (failureBackoff != null && System.currentTimeMillis() < failureBackoff.retryAfter()) {
+            LOGGER.warn(
+                    "Not calling JWK endpoint ({}) after {} consecutive failures",
+                    publicJwkEndpoint,
+                    failureBackoff.consecutiveFailures());
+            return null;
+        }
+
+        IndexedJwks previousJwks = cachedJwks.get(publicJwkEndpoint);
+        JWKS newJwks;
+        try {
+            // Passing the cached entry lets an unchanged key set come back as 304 Not Modified
+            newJwks =
+                    jwkRequest.callJWKSEndpoint(
+                            publicJwkEndpoint, previousJwks == null ? null : previousJwks.jwks());
+        } catch (JWKSRequestException e) {
+            LOGGER.error("Failed to call JWK endpoint ({})", publicJwkEndpoint, e);
+            recordFailure(publicJwkEndpoint);
+            return null;
+        }
+        failureBackoffs.remove(publicJwkEndpoint);
+        newJwks.setLastUpdated(System.currentTimeMillis());
+        newJwks.setCacheControl(
+                TimeUnit.SECONDS.toMillis(newJwks.getMaxAgeFromCacheControlHeader()));
+        LOGGER.info(
+                "JWKs cache has been updated to '{}' seconds",
+                newJwks.getMaxAgeFromCacheControlHeader());
+
+        IndexedJwks indexedJwks;
+        if (previousJwks != null && previousJwks.jwks().getKeys() == newJwks.getKeys()) {
+            // Not modified, so the keys parsed from the previous response still apply
+            indexedJwks =
+                    new IndexedJwks(
+                            newJwks,
+                            previousJwks.base64JwksByKid(),
+                            previousJwks.signingJwksByKid());
+        } else {
+            indexedJwks = index(newJwks);
+        }
+        cachedJwks.put(publicJwkEndpoint, indexedJwks);
+        return indexedJwks;
+    }
+
+    private void recordFailure(String publicJwkEndpoint) {
+        failureBackoffs.compute(
+                publicJwkEndpoint,
+                (endpoint, previous) -> {
+                    int consecutiveFailures =
+                            previous == null ? 1 : previous.consecutiveFailures() + 1;
+                    long backoff =
+                            Math.min(
+                                    failureBackoffMillis << Math.min(consecutiveFailures - 1, 20),
+                                    failureBackoffMaxMillis);
+                    return new FailureBackoff(
+                            consecutiveFailures, System.currentTimeMillis() + backoff);
+                });
+    }
+
+    private static IndexedJwks index(JWKS jwks) {
+        Map<String, String> base64JwksByKid = new HashMap<>();
+        Map<String, JWK> signingJwksByKid = new HashMap<>();
+        if (jwks.getKeys() != null) {
+            for (Key key : jwks.getKeys()) {
+                String kid = key.getKid();
+                // The first signing key with a kid wins, as it did with the previous linear scan
+                if (!"sig".equals(key.getUse())
+                        || kid == null
+                        || base64JwksByKid.containsKey(kid)) {
+                    continue;
+                }
+                String serialisedKey = toJson(key);
+                base64JwksByKid.put(
+                        kid, Base64.getEncoder().encodeToString(serialisedKey.getBytes()));
+                parseJwk(kid, serialisedKey).ifPresent(jwk -> signingJwksByKid.put(kid, jwk));
+            }
+        }
+        return new IndexedJwks(jwks, Map.copyOf(base64JwksByKid), Map.copyOf(signingJwksByKid));
+    }
+
+    private static String toJson(Key key) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(key);
         } catch (JsonProcessingException e) {
             throw new IllegalArgumentException(e);
         }
     }
+
+    private static Optional<JWK> parseJwk(String kid, String serialisedKey) {
+        try {
+            return Optional.of(JWK.parse(serialisedKey));
+        } catch (ParseException e) {
+            LOGGER.warn("Unable to parse JWK with kid {}", kid, e);
+            return Optional.empty();
+        }
+    }
+
+    private static long getMillisFromSecondsEnv(String variable, long defaultSeconds) {
+        return TimeUnit.SECONDS.toMillis(
+                Optional.ofNullable(System.getenv(variable))
+                        .map(Long::parseLong)
+                        .orElse(defaultSeconds));
+    }
+
+    private record FailureBackoff(int consecutiveFailures, long retryAfter) {}
+
+    private record IndexedJwks(
+            JWKS jwks, Map<String, String> base64JwksByKid, Map<String, JWK> signingJwksByKid) {
+        private boolean containsKid(String kid) {
+            return kid != null && base64JwksByKid.containsKey(kid);
+        }
+    }
 }
@@ -6,35 +6,74 @@ import org.slf4j.LoggerFactory;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.JWKS;
 import uk.gov.di.ipv.cri.common.library.exception.JWKSRequestException;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public class JwkRequest {
     private static final Logger LOGGER = LoggerFactory.getLogger(JwkRequest.class);
     private static final String CACHE_CONTROL_HEADER_NAME = "Cache-Control";
     private static final String MAX_AGE_PREFIX = "max-age=";
+    private static final String ETAG_HEADER_NAME = "ETag";
+    private static final String LAST_MODIFIED_HEADER_NAME = "Last-Modified";
+    private static final String IF_NONE_MATCH_HEADER_NAME = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE_HEADER_NAME = "If-Modified-Since";
+    private static final String CONNECT_TIMEOUT_MILLIS = "JWKS_HTTP_CONNECT_TIMEOUT_MILLIS";
+    private static final String READ_TIMEOUT_MILLIS = "JWKS_HTTP_READ_TIMEOUT_MILLIS";
+    private static final String HTTP2_ENABLED = "JWKS_HTTP2_ENABLED";
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    // The GOAWAY handling bug in the HttpClient HTTP/2 implementation is fixed from Java 21
+    private static final int MINIMUM_HTTP2_JAVA_VERSION = 21;
+    private static final String GOAWAY = "GOAWAY";
+
     private final ObjectMapper objectMapper;
+    private final Supplier<HttpClient> httpClientFactory;
+    private final Duration readTimeout;
 
-    private HttpClient httpClient;
+    private volatile HttpClient httpClient;
 
     public JwkRequest() {
-        this(null, new ObjectMapper());
+        this(JwkRequest::createHttpClient, new ObjectMapper());
     }
 
+    /** Uses the given client, or creates one as the no-argument constructor does when null. */
     public JwkRequest(HttpClient httpClient, ObjectMapper objectMapper) {
-        this.httpClient = httpClient;
+        this(httpClient == null ? JwkRequest::createHttpClient : () -> httpClient, objectMapper);
+    }
+
+    JwkRequest(Supplier<HttpClient> httpClientFactory, ObjectMapper objectMapper) {
+        this.httpClientFactory = httpClientFactory;
         this.objectMapper = objectMapper;
+        this.readTimeout =
+                Duration.ofMillis(getLongFromEnv(READ_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS));
     }
 
     public JWKS callJWKSEndpoint(String endpoint) throws JWKSRequestException {
+        return callJWKSEndpoint(endpoint, null);
+    }
+
+    /**
+     * Fetches the key set, making the request conditional on the validators of a previously
+     * fetched key set when one is given. A {@code 304 Not Modified} response returns a copy of
+     * the previous key set with the new max-age, without parsing a body.
+     */
+    public JWKS callJWKSEndpoint(String endpoint, JWKS cachedJwks) throws JWKSRequestException {
         LOGGER.info("Calling JWKS endpoint ({})", endpoint);
 
-        HttpRequest request = createRequest(endpoint);
+        HttpRequest request = createRequest(endpoint, cachedJwks);
         HttpResponse<String> response = sendRequest(request);
 
+        if (response.statusCode() == 304 && cachedJwks != null) {
+            LOGGER.info("JWKS endpoint ({}) returned not modified", endpoint);
+            return notModified(response, cachedJwks);
+        }
         if (response.statusCode() != 200) {
             throw new JWKSRequestException(
                     "JWK endpoint returned status code " + response.statusCode());
@@ -42,40 +81,134 @@ public class JwkRequest {
 
         try {
             JWKS jwks = objectMapper.readValue(response.body(), JWKS.class);
-            parseCacheControlHeader(response).ifPresent(jwks::setMaxAgeFromCacheControlHeader);
+            HttpHeaders headers = response.headers();
+            parseCacheControlHeader(headers).ifPresent(jwks::setMaxAgeFromCacheControlHeader);
+            headers.firstValue(ETAG_HEADER_NAME).ifPresent(jwks::setEtag);
+            headers.firstValue(LAST_MODIFIED_HEADER_NAME).ifPresent(jwks::setLastModified);
             return jwks;
         } catch (Exception e) {
             throw new JWKSRequestException("Failed to parse JWKS endpoint response", e);
         }
     }
 
-    private HttpRequest createRequest(String endpoint) throws JWKSRequestException {
+    private JWKS notModified(HttpResponse<String> response, JWKS cachedJwks) {
+        HttpHeaders headers = response.headers();
+        JWKS jwks = new JWKS();
+        jwks.setKeys(cachedJwks.getKeys());
+        jwks.setEtag(headers.firstValue(ETAG_HEADER_NAME).orElse(cachedJwks.getEtag()));
+        jwks.setLastModified(
+                headers.firstValue(LAST_MODIFIED_HEADER_NAME).orElse(cachedJwks.getLastModified()));
+        jwks.setMaxAgeFromCacheControlHeader(
+                parseCacheControlHeader(headers)
+                        .orElse(cachedJwks.getMaxAgeFromCacheControlHeader()));
+        return jwks;
+    }
+
+    private HttpRequest createRequest(String endpoint, JWKS cachedJwks)
+            throws JWKSRequestException {
         try {
-            return HttpRequest.newBuilder().uri(new URI(endpoint)).GET().build();
+            HttpRequest.Builder builder =
+                    HttpRequest.newBuilder().uri(new URI(endpoint)).timeout(readTimeout).GET();
+            if (cachedJwks != null && cachedJwks.getEtag() != null) {
+                builder.header(IF_NONE_MATCH_HEADER_NAME, cachedJwks.getEtag());
+            }
+            if (cachedJwks != null && cachedJwks.getLastModified() != null) {
+                builder.header(IF_MODIFIED_SINCE_HEADER_NAME, cachedJwks.getLastModified());
+            }
+            return builder.build();
         } catch (Exception e) {
             throw new JWKSRequestException("Failed to create request for endpoint: " + endpoint, e);
         }
     }
 
     private HttpResponse<String> sendRequest(HttpRequest request) throws JWKSRequestException {
+        HttpClient client = getHttpClient();
         try {
-            // This try-catch-finally is to fix a bug with the HttpClient in Java versions less than
-            // 21
-            // Where it does not handle the GOAWAY frame in Http 2 properly.
-            if (httpClient == null) {
-                httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            return client.send(request, HttpResponse.BodyHandlers.ofString()); // NOSONAR
+        } catch (IOException e) {
+            // Only an HTTP/2 connection can be closed with GOAWAY
+            if (client.version() != HttpClient.Version.HTTP_2 || !isGoAway(e)) {
+                throw new JWKSRequestException("Failed to send HTTP request", e);
+            }
+            // The connection was closed by the server, so retry once on a fresh client
+            LOGGER.warn("GOAWAY received from JWKS endpoint, retrying with a new HTTP client", e);
+            return retryWithNewHttpClient(client, request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JWKSRequestException("Failed to send HTTP request", e);
+        } catch (Exception e) { // NOSONAR
+            throw new JWKSRequestException("Failed to send HTTP request", e);
+        }
+    }
+
+    private HttpResponse<String> retryWithNewHttpClient(
+            HttpClient failedClient, HttpRequest request) throws JWKSRequestException {
+        synchronized (this) {
+            if (httpClient == failedClient) {
+                httpClient = httpClientFactory.get();
             }
-            return httpClient.send(request, HttpResponse.BodyHandlers.ofString()); // NOSONAR
+        }
+        try {
+            return getHttpClient().send(request, HttpResponse.BodyHandlers.ofString()); // NOSONAR
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JWKSRequestException("Failed to send HTTP request", e);
         } catch (Exception e) { // NOSONAR
             throw new JWKSRequestException("Failed to send HTTP request", e);
-        } finally {
-            httpClient = null;
         }
     }
 
-    private Optional<Integer> parseCacheControlHeader(HttpResponse<String> response) {
-        return response.headers()
-                .firstValue(CACHE_CONTROL_HEADER_NAME)
+    private HttpClient getHttpClient() {
+        HttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = httpClientFactory.get();
+                }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    private static boolean isGoAway(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(GOAWAY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static HttpClient createHttpClient() {
+        HttpClient.Version version = HttpClient.Version.HTTP_1_1;
+        if (Boolean.parseBoolean(System.getenv(HTTP2_ENABLED))) {
+            if (Runtime.version().feature() >= MINIMUM_HTTP2_JAVA_VERSION) {
+                version = HttpClient.Version.HTTP_2;
+            } else {
+                LOGGER.warn(
+                        "{} is set but HTTP/2 requires Java {} or later, using HTTP/1.1",
+                        HTTP2_ENABLED,
+                        MINIMUM_HTTP2_JAVA_VERSION);
+            }
+        }
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(
+                        Duration.ofMillis(
+                                getLongFromEnv(
+                                        CONNECT_TIMEOUT_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS)))
+                .build();
+    }
+
+    private static long getLongFromEnv(String variable, long defaultValue) {
+        return Optional.ofNullable(System.getenv(variable))
+                .map(Long::parseLong)
+                .orElse(defaultValue);
+    }
+
+    private Optional<Integer> parseCacheControlHeader(HttpHeaders headers) {
+        return headers.firstValue(CACHE_CONTROL_HEADER_NAME)
                 .filter(value -> value.startsWith(MAX_AGE_PREFIX))
                 .map(
                         value -> {
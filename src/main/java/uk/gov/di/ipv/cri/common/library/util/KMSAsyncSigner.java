@@ -0,0 +1,78 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.model.SignRequest;
+import software.amazon.awssdk.services.kms.model.SignResponse;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.nimbusds.jose.JWSAlgorithm.ES256;
+
+/** Signs with a KMS key in the same way as {@link KMSSigner}, using a {@link KmsAsyncClient}. */
+public class KMSAsyncSigner implements AsyncJWSSigner {
+
+    private final KmsAsyncClient kmsAsyncClient;
+    private final JCAContext jcaContext = new JCAContext();
+    private final String keyId;
+
+    public KMSAsyncSigner(String keyId, KmsAsyncClient kmsAsyncClient) {
+        this.keyId = keyId;
+        this.kmsAsyncClient = kmsAsyncClient;
+    }
+
+    @Override
+    public CompletableFuture<Base64URL> signAsync(JWSHeader header, byte[] signingInput) {
+        Objects.requireNonNull(signingInput, "Signing input must not be null");
+
+        SignRequest signRequest;
+        try {
+            signRequest = KMSSigner.buildSignRequest(keyId, signingInput);
+        } catch (JOSEException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return kmsAsyncClient.sign(signRequest).thenApply(KMSAsyncSigner::toConcatSignature);
+    }
+
+    @Override
+    public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+        try {
+            return signAsync(header, signingInput).join();
+        } catch (CompletionException e) {
+            throw toJOSEException(e.getCause());
+        }
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return Set.of(ES256);
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return jcaContext;
+    }
+
+    static JOSEException toJOSEException(Throwable cause) {
+        if (cause instanceof JOSEException joseException) {
+            return joseException;
+        }
+        return new JOSEException("Failed to sign JWT: " + cause.getMessage(), cause);
+    }
+
+    private static Base64URL toConcatSignature(SignResponse signResponse) {
+        try {
+            return KMSSigner.toConcatSignature(signResponse);
+        } catch (JOSEException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
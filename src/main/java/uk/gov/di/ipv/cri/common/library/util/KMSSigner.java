@@ -49,15 +49,21 @@ public class KMSSigner implements JWSSigner {
     public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
         Objects.requireNonNull(signingInput, "Signing input must not be null");
 
-        SignResponse signResponse =
-                kmsClient.sign(
-                        SignRequest.builder()
-                                .signingAlgorithm(SigningAlgorithmSpec.ECDSA_SHA_256.toString())
-                                .keyId(keyId)
-                                .message(SdkBytes.fromByteArray(getSigningInputBytes(signingInput)))
-                                .messageType(MessageType.DIGEST)
-                                .build());
+        SignResponse signResponse = kmsClient.sign(buildSignRequest(keyId, signingInput));
 
+        return toConcatSignature(signResponse);
+    }
+
+    static SignRequest buildSignRequest(String keyId, byte[] signingInput) throws JOSEException {
+        return SignRequest.builder()
+                .signingAlgorithm(SigningAlgorithmSpec.ECDSA_SHA_256.toString())
+                .keyId(keyId)
+                .message(SdkBytes.fromByteArray(getSigningInputBytes(signingInput)))
+                .messageType(MessageType.DIGEST)
+                .build();
+    }
+
+    static Base64URL toConcatSignature(SignResponse signResponse) throws JOSEException {
         byte[] concatSignature =
                 ECDSA.transcodeSignatureToConcat(
                         signResponse.signature().asByteArray(),
@@ -66,7 +72,7 @@ public class KMSSigner implements JWSSigner {
         return Base64URL.encode(concatSignature);
     }
 
-    private byte[] getSigningInputBytes(byte[] signingInput) throws JOSEException {
+    private static byte[] getSigningInputBytes(byte[] signingInput) throws JOSEException {
         byte[] signingInputHash;
         try {
             signingInputHash = MessageDigest.getInstance("SHA-256").digest(signingInput);
@@ -13,14 +13,44 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SignedJWTFactory {
 
     private static final String KID_PREFIX = "did:web:";
+    private static final int MAX_CACHED_HEADERS = 16;
+    private static final int DEFAULT_MAX_SIGNING_REQUESTS_IN_FLIGHT = 16;
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+    private static final JWSHeader DEFAULT_HEADER =
+            withCachedEncoding(
+                    new JWSHeader.Builder(JWSAlgorithm.ES256).type(JOSEObjectType.JWT).build());
+    // The header only depends on the issuer and key id, so it is built once for each pair
+    private static final BoundedCache<HeaderKey, JWSHeader> HEADER_CACHE =
+            new BoundedCache<>(MAX_CACHED_HEADERS);
+
     private final JWSSigner kmsSigner;
+    private final int maxSigningRequestsInFlight;
 
     public SignedJWTFactory(JWSSigner kmsSigner) {
+        this(kmsSigner, DEFAULT_MAX_SIGNING_REQUESTS_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxSigningRequestsInFlight the most signatures {@link #createSignedJwts} waits on at
+     *     once when the signer is an {@link AsyncJWSSigner}
+     */
+    public SignedJWTFactory(JWSSigner kmsSigner, int maxSigningRequestsInFlight) {
+        if (maxSigningRequestsInFlight < 1) {
+            throw new IllegalArgumentException("maxSigningRequestsInFlight must be at least 1");
+        }
         this.kmsSigner = kmsSigner;
+        this.maxSigningRequestsInFlight = maxSigningRequestsInFlight;
     }
 
     // Updated method for passing issuer used in building kid
@@ -39,42 +69,141 @@ public class SignedJWTFactory {
         return signedJWT;
     }
 
+    // The claims are validated as a JWT claims set, then signed exactly as given rather than
+    // re-serialised
     public SignedJWT createSignedJwt(String claimsSet) throws ParseException, JOSEException {
-
-        SignedJWT signedJWT = new SignedJWT(generateHeader(), JWTClaimsSet.parse(claimsSet));
-        signedJWT.sign(kmsSigner);
-        Base64URL header = generateHeader().toBase64URL();
+        JWTClaimsSet.parse(claimsSet);
+        JWSHeader jwsHeader = generateHeader();
+        Base64URL header = jwsHeader.toBase64URL();
         Base64URL payload = Base64URL.encode(claimsSet);
 
-        Base64URL signature = signedJWT.getSignature();
+        byte[] signingInput = (header + "." + payload).getBytes(StandardCharsets.US_ASCII);
+        Base64URL signature = kmsSigner.sign(jwsHeader, signingInput);
         return new SignedJWT(header, payload, signature);
     }
 
+    /**
+     * Signs each claims set, returning the signed JWTs in the same order. With an {@link
+     * AsyncJWSSigner} the signing requests are pipelined, otherwise they are made one at a time.
+     */
+    public List<SignedJWT> createSignedJwts(List<JWTClaimsSet> claimsSets) throws JOSEException {
+        return createSignedJwts(claimsSets, generateHeader());
+    }
+
+    public List<SignedJWT> createSignedJwts(
+            List<JWTClaimsSet> claimsSets, String issuer, String keyId)
+            throws JOSEException, NoSuchAlgorithmException {
+        return createSignedJwts(claimsSets, generateHeader(issuer, keyId));
+    }
+
+    private List<SignedJWT> createSignedJwts(List<JWTClaimsSet> claimsSets, JWSHeader jwsHeader)
+            throws JOSEException {
+        if (!(kmsSigner instanceof AsyncJWSSigner asyncSigner)) {
+            List<SignedJWT> signedJWTs = new ArrayList<>(claimsSets.size());
+            for (JWTClaimsSet claimsSet : claimsSets) {
+                SignedJWT signedJWT = new SignedJWT(jwsHeader, claimsSet);
+                signedJWT.sign(kmsSigner);
+                signedJWTs.add(signedJWT);
+            }
+            return signedJWTs;
+        }
+
+        Base64URL header = jwsHeader.toBase64URL();
+        Semaphore inFlight = new Semaphore(maxSigningRequestsInFlight);
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        List<CompletableFuture<SignedJWT>> pendingJWTs = new ArrayList<>(claimsSets.size());
+        try {
+            for (JWTClaimsSet claimsSet : claimsSets) {
+                inFlight.acquire();
+                if (firstFailure.get() != null) {
+                    // No point sending the rest once one has failed
+                    break;
+                }
+                Base64URL payload = claimsSet.toPayload().toBase64URL();
+                byte[] signingInput = (header + "." + payload).getBytes(StandardCharsets.US_ASCII);
+                CompletableFuture<Base64URL> signing;
+                try {
+                    signing = asyncSigner.signAsync(jwsHeader, signingInput);
+                } catch (RuntimeException e) {
+                    // Failed the same way as an asynchronous failure, so the permit is released
+                    signing = CompletableFuture.failedFuture(e);
+                }
+                pendingJWTs.add(
+                        signing.whenComplete(
+                                        (signature, error) -> {
+                                            if (error != null) {
+                                                firstFailure.compareAndSet(null, error);
+                                            }
+                                            inFlight.release();
+                                        })
+                                .thenApply(signature -> toSignedJwt(header, payload, signature)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JOSEException("Interrupted while signing JWTs", e);
+        }
+
+        List<SignedJWT> signedJWTs = new ArrayList<>(pendingJWTs.size());
+        for (CompletableFuture<SignedJWT> pendingJWT : pendingJWTs) {
+            try {
+                signedJWTs.add(pendingJWT.join());
+            } catch (CompletionException e) {
+                throw KMSAsyncSigner.toJOSEException(e.getCause());
+            }
+        }
+        return signedJWTs;
+    }
+
+    private static SignedJWT toSignedJwt(Base64URL header, Base64URL payload, Base64URL signature) {
+        try {
+            return new SignedJWT(header, payload, signature);
+        } catch (ParseException e) {
+            throw new CompletionException(new JOSEException(e.getMessage(), e));
+        }
+    }
+
     private JWSHeader generateHeader() {
-        return new JWSHeader.Builder(JWSAlgorithm.ES256).type(JOSEObjectType.JWT).build();
+        return DEFAULT_HEADER;
     }
 
     // Updated method for passing issuer used in building kid
     private JWSHeader generateHeader(String issuer, String signingKeyId)
             throws NoSuchAlgorithmException {
+        HeaderKey headerKey = new HeaderKey(issuer, signingKeyId);
+        JWSHeader jwsHeader = HEADER_CACHE.get(headerKey);
+        if (jwsHeader == null) {
+            jwsHeader = buildHeader(issuer, signingKeyId);
+            HEADER_CACHE.put(headerKey, jwsHeader);
+        }
+        return jwsHeader;
+    }
+
+    private static JWSHeader buildHeader(String issuer, String signingKeyId)
+            throws NoSuchAlgorithmException {
 
         issuer = issuer.replaceFirst("https://", "");
 
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
         byte[] hash = digest.digest(signingKeyId.getBytes(StandardCharsets.UTF_8));
-        String hashedKeyId = byteArrayToHex(hash);
+        String hashedKeyId = HEX_FORMAT.formatHex(hash);
 
         String keyId = KID_PREFIX + issuer + "#" + hashedKeyId;
 
-        return new JWSHeader.Builder(JWSAlgorithm.ES256)
-                .type(JOSEObjectType.JWT)
-                .keyID(keyId)
-                .build();
+        return withCachedEncoding(
+                new JWSHeader.Builder(JWSAlgorithm.ES256)
+                        .type(JOSEObjectType.JWT)
+                        .keyID(keyId)
+                        .build());
     }
 
-    private static String byteArrayToHex(byte[] a) {
-        StringBuilder sb = new StringBuilder(a.length * 2);
-        for (byte b : a) sb.append(String.format("%02x", b));
-        return sb.toString();
+    // A parsed header keeps its Base64URL form, so signing reuses it instead of re-serialising
+    private static JWSHeader withCachedEncoding(JWSHeader jwsHeader) {
+        try {
+            return JWSHeader.parse(jwsHeader.toBase64URL());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Unable to parse generated JWS header", e);
+        }
     }
+
+    private record HeaderKey(String issuer, String signingKeyId) {}
 }
@@ -0,0 +1,7 @@
+package uk.gov.di.ipv.cri.common.library.util.retry;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncRetryable<T> {
+    CompletableFuture<T> execute();
+}
@@ -0,0 +1,104 @@
+package uk.gov.di.ipv.cri.common.library.util.retry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A circuit breaker shared by every {@link RetryManager} call to the same dependency.
+ *
+ * <p>The breaker opens after a number of consecutive failed attempts, and calls are then rejected
+ * without being made. Once the open duration has passed a single trial call is let through; the
+ * breaker closes if it succeeds and opens again if it fails.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final Map<String, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+
+    private final String dependencyName;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long trialStartedAt;
+
+    CircuitBreaker(String dependencyName, int failureThreshold, long openDurationMillis) {
+        this.dependencyName = dependencyName;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * Returns the breaker for the dependency, creating it with the given settings if this is the
+     * first use of the dependency in this execution environment.
+     */
+    public static CircuitBreaker forDependency(
+            String dependencyName, int failureThreshold, long openDurationMillis) {
+        return CIRCUIT_BREAKERS.computeIfAbsent(
+                dependencyName,
+                name -> new CircuitBreaker(name, failureThreshold, openDurationMillis));
+    }
+
+    public String getDependencyName() {
+        return dependencyName;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns true if a call may be made. Moves an open breaker to half open, letting this call
+     * through as the trial, once the open duration has passed. If the trial's outcome has not been
+     * recorded within the open duration, such as when its future never completes, another trial
+     * is let through.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long waitingSince = state == State.OPEN ? openedAt : trialStartedAt;
+        if (now - waitingSince >= openDurationMillis) {
+            state = State.HALF_OPEN;
+            trialStartedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @return true if the call closed the breaker
+     */
+    public synchronized boolean recordSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.CLOSED) {
+            return false;
+        }
+        state = State.CLOSED;
+        return true;
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @return true if the call opened the breaker
+     */
+    public synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN
+                || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+}
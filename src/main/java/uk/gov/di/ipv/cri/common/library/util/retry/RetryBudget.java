@@ -0,0 +1,56 @@
+package uk.gov.di.ipv.cri.common.library.util.retry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A token bucket shared by every {@link RetryManager} call to the same dependency, limiting how
+ * many retries they make between them.
+ *
+ * <p>Each retry takes a token and each successful call returns a fraction of one, up to the bucket
+ * size. While a dependency is failing the bucket empties and callers stop retrying, so retries
+ * cannot multiply the load on a dependency that is already struggling. First attempts are never
+ * limited.
+ */
+public class RetryBudget {
+    private static final Map<String, RetryBudget> RETRY_BUDGETS = new ConcurrentHashMap<>();
+
+    private final String dependencyName;
+    private final double maxTokens;
+    private final double tokensPerSuccess;
+    private double tokens;
+
+    RetryBudget(String dependencyName, double maxTokens, double tokensPerSuccess) {
+        this.dependencyName = dependencyName;
+        this.maxTokens = maxTokens;
+        this.tokensPerSuccess = tokensPerSuccess;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Returns the budget for the dependency, creating a full one with the given settings if this
+     * is the first use of the dependency in this execution environment.
+     */
+    public static RetryBudget forDependency(
+            String dependencyName, double maxTokens, double tokensPerSuccess) {
+        return RETRY_BUDGETS.computeIfAbsent(
+                dependencyName, name -> new RetryBudget(name, maxTokens, tokensPerSuccess));
+    }
+
+    public String getDependencyName() {
+        return dependencyName;
+    }
+
+    /** Takes a token for a retry, returning false if the budget is used up. */
+    public synchronized boolean tryAcquire() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        tokens = Math.min(maxTokens, tokens + tokensPerSuccess);
+    }
+}
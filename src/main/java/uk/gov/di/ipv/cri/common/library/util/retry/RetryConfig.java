@@ -1,18 +1,61 @@
 package uk.gov.di.ipv.cri.common.library.util.retry;
 
+import uk.gov.di.ipv.cri.common.library.util.EventProbe;
+
+import java.time.Instant;
 import java.util.function.Predicate;
 
 public class RetryConfig {
+    /**
+     * How the delay before a retry is randomised, so that callers failing together do not retry
+     * together.
+     */
+    public enum Jitter {
+        /** The delay is used as calculated. */
+        NONE,
+        /** A random delay between zero and the calculated delay. */
+        FULL,
+        /**
+         * A random delay between the base delay and three times the previous delay, capped at the
+         * maximum delay. The exponential setting is not used.
+         */
+        DECORRELATED
+    }
+
     private final int maxAttempts;
     private final long delayBetweenAttempts;
+    private final long maxDelayBetweenAttempts;
     private final boolean exponentiallyRetry;
+    private final Jitter jitter;
+    private final Instant deadline;
     private final Predicate<Exception> abortCondition;
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final EventProbe eventProbe;
 
     private RetryConfig(Builder builder) {
         this.maxAttempts = builder.maxAttempts;
         this.delayBetweenAttempts = builder.delayBetweenAttempts;
+        this.maxDelayBetweenAttempts = builder.maxDelayBetweenAttempts;
         this.exponentiallyRetry = builder.exponentiallyRetry;
+        this.jitter = builder.jitter;
+        this.deadline = builder.deadline;
         this.abortCondition = builder.abortCondition;
+        this.retryBudget =
+                builder.retryBudgetMaxTokens > 0
+                        ? RetryBudget.forDependency(
+                                builder.dependencyName,
+                                builder.retryBudgetMaxTokens,
+                                builder.retryBudgetTokensPerSuccess)
+                        : null;
+        this.circuitBreaker =
+                builder.circuitBreakerFailureThreshold > 0
+                        ? CircuitBreaker.forDependency(
+                                builder.dependencyName,
+                                builder.circuitBreakerFailureThreshold,
+                                builder.circuitBreakerOpenDuration)
+                        : null;
+        this.eventProbe = builder.eventProbe;
     }
 
     public int getMaxAttempts() {
@@ -23,24 +66,59 @@ public class RetryConfig {
         return delayBetweenAttempts;
     }
 
+    public long getMaxDelayBetweenAttempts() {
+        return maxDelayBetweenAttempts;
+    }
+
     public boolean isExponentiallyRetry() {
         return exponentiallyRetry;
     }
 
+    public Jitter getJitter() {
+        return jitter;
+    }
+
+    public Instant getDeadline() {
+        return deadline;
+    }
+
     public Predicate<Exception> getAbortCondition() {
         return abortCondition;
     }
 
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public EventProbe getEventProbe() {
+        return eventProbe;
+    }
+
     public static class Builder {
         private int maxAttempts;
         private long delayBetweenAttempts;
+        private long maxDelayBetweenAttempts;
         private boolean exponentiallyRetry;
+        private Jitter jitter;
+        private Instant deadline;
         private Predicate<Exception> abortCondition;
+        private String dependencyName;
+        private double retryBudgetMaxTokens;
+        private double retryBudgetTokensPerSuccess;
+        private int circuitBreakerFailureThreshold;
+        private long circuitBreakerOpenDuration;
+        private EventProbe eventProbe;
 
         public Builder() {
             this.maxAttempts = 3;
             this.delayBetweenAttempts = 1000;
+            this.maxDelayBetweenAttempts = Long.MAX_VALUE;
             this.exponentiallyRetry = false;
+            this.jitter = Jitter.NONE;
         }
 
         public Builder maxAttempts(int maxAttempts) {
@@ -53,17 +131,83 @@ public class RetryConfig {
             return this;
         }
 
+        public Builder maxDelayBetweenAttempts(long maxDelayBetweenAttemptsInMs) {
+            this.maxDelayBetweenAttempts = maxDelayBetweenAttemptsInMs;
+            return this;
+        }
+
         public Builder exponentiallyRetry(boolean exponentiallyRetry) {
             this.exponentiallyRetry = exponentiallyRetry;
             return this;
         }
 
+        public Builder jitter(Jitter jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * No retry is started if its delay would end after the deadline. The last failure is
+         * thrown instead. In a Lambda handler, pass {@code
+         * Instant.now().plusMillis(context.getRemainingTimeInMillis())}.
+         */
+        public Builder deadline(Instant deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
         public Builder abortOn(Predicate<Exception> condition) {
             this.abortCondition = condition;
             return this;
         }
 
+        /**
+         * Names the dependency being called. Every config with the same name shares one retry
+         * budget and one circuit breaker, whichever of them is built first deciding their
+         * settings.
+         */
+        public Builder dependency(String dependencyName) {
+            this.dependencyName = dependencyName;
+            return this;
+        }
+
+        /**
+         * Limits the retries made to the dependency by all callers together. Each retry takes a
+         * token from a bucket of {@code maxTokens}, and each successful call returns {@code
+         * tokensPerSuccess} tokens. When the bucket is empty the last failure is thrown instead of
+         * retrying.
+         */
+        public Builder retryBudget(double maxTokens, double tokensPerSuccess) {
+            this.retryBudgetMaxTokens = maxTokens;
+            this.retryBudgetTokensPerSuccess = tokensPerSuccess;
+            return this;
+        }
+
+        /**
+         * Stops calling the dependency for {@code openDurationInMs} after {@code failureThreshold}
+         * consecutive failed attempts across all callers. While the breaker is open a {@link
+         * uk.gov.di.ipv.cri.common.library.exception.CircuitBreakerOpenException} is thrown
+         * without calling the dependency, and retries stop once the breaker opens. Failures
+         * matching the abort condition count as the dependency answering.
+         */
+        public Builder circuitBreaker(int failureThreshold, long openDurationInMs) {
+            this.circuitBreakerFailureThreshold = failureThreshold;
+            this.circuitBreakerOpenDuration = openDurationInMs;
+            return this;
+        }
+
+        /** Records circuit breaker and retry budget metrics, named after the dependency. */
+        public Builder eventProbe(EventProbe eventProbe) {
+            this.eventProbe = eventProbe;
+            return this;
+        }
+
         public RetryConfig build() {
+            if ((retryBudgetMaxTokens > 0 || circuitBreakerFailureThreshold > 0)
+                    && dependencyName == null) {
+                throw new IllegalStateException(
+                        "A dependency name is required for a retry budget or circuit breaker");
+            }
             return new RetryConfig(this);
         }
     }
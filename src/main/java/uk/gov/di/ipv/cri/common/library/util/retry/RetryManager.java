@@ -2,10 +2,23 @@ package uk.gov.di.ipv.cri.common.library.util.retry;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.gov.di.ipv.cri.common.library.exception.CircuitBreakerOpenException;
 import uk.gov.di.ipv.cri.common.library.exception.RetryException;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 public class RetryManager {
     private static final Logger LOGGER = LogManager.getLogger(RetryManager.class);
+    private static final String CIRCUIT_BREAKER_OPENED = "_circuit_breaker_opened";
+    private static final String CIRCUIT_BREAKER_CLOSED = "_circuit_breaker_closed";
+    private static final String CIRCUIT_BREAKER_REJECTED = "_circuit_breaker_rejected";
+    private static final String RETRY_BUDGET_EXHAUSTED = "_retry_budget_exhausted";
 
     private RetryManager() {
         throw new IllegalStateException("Static class");
@@ -13,53 +26,244 @@ public class RetryManager {
 
     public static <T> T execute(RetryConfig retryConfig, Retryable<T> retryable) {
         int maxAttempts = retryConfig.getMaxAttempts();
+        long sleepDuration = 0;
 
         for (int attempt = 0; attempt < maxAttempts; attempt++) {
-            try {
-                LOGGER.info("Retrying attempt {} of {}", attempt, maxAttempts);
-
-                if (attempt > 0) {
-                    long start = System.currentTimeMillis();
-                    long sleepDuration = calculateSleepDuration(retryConfig, attempt);
-                    LOGGER.info(
-                            "Sleeping for {}ms at {}", sleepDuration, System.currentTimeMillis());
-                    Thread.sleep(sleepDuration); // NOSONAR
-                    long elapsed = System.currentTimeMillis() - start;
-                    LOGGER.info("Slept for {}ms", elapsed);
-                }
+            LOGGER.debug("Retrying attempt {} of {}", attempt, maxAttempts);
 
+            if (attempt > 0) {
+                sleep(sleepDuration);
+            }
+            acquirePermission(retryConfig);
+
+            try {
                 T result = retryable.execute();
 
-                LOGGER.info("Retry succeeded on attempt {}", attempt);
+                LOGGER.debug("Retry succeeded on attempt {}", attempt);
+                recordSuccess(retryConfig);
                 return result;
 
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                throw new RetryException(ex);
+            } catch (Error e) {
+                recordFailure(retryConfig, e);
+                throw e;
             } catch (Exception e) {
-                LOGGER.error("Retry attempt {} failed", attempt, e);
+                LOGGER.debug("Retry attempt {} failed", attempt, e);
+                recordFailure(retryConfig, e);
                 if (shouldAbortRetry(retryConfig, e, attempt)) {
                     throw e;
                 }
+                sleepDuration = calculateSleepDuration(retryConfig, attempt + 1, sleepDuration);
+                if (isPastDeadline(retryConfig, sleepDuration)) {
+                    LOGGER.warn("Not retrying, as the deadline would pass before the next attempt");
+                    throw e;
+                }
+                if (!acquireRetryToken(retryConfig)) {
+                    throw e;
+                }
             }
         }
 
         throw new RetryException();
     }
 
+    /**
+     * Runs the retryable until its future completes successfully, following the same rules as
+     * {@link #execute}. Retries are scheduled after their delay rather than sleeping, so no thread
+     * is held while waiting. The returned future fails with the last failure if the retries run
+     * out, the abort condition matches, the deadline would pass or the retry budget is used up,
+     * and with a {@link CircuitBreakerOpenException} if the circuit breaker is open.
+     */
+    public static <T> CompletableFuture<T> executeAsync(
+            RetryConfig retryConfig, AsyncRetryable<T> retryable) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(retryConfig, retryable, 0, 0, result);
+        return result;
+    }
+
+    private static <T> void attemptAsync(
+            RetryConfig retryConfig,
+            AsyncRetryable<T> retryable,
+            int attempt,
+            long previousSleepDuration,
+            CompletableFuture<T> result) {
+        LOGGER.debug("Retrying attempt {} of {}", attempt, retryConfig.getMaxAttempts());
+        CompletableFuture<T> attemptFuture;
+        try {
+            acquirePermission(retryConfig);
+        } catch (CircuitBreakerOpenException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        try {
+            attemptFuture = retryable.execute();
+        } catch (Exception e) {
+            attemptFuture = CompletableFuture.failedFuture(e);
+        }
+
+        attemptFuture.whenComplete(
+                (value, throwable) -> {
+                    if (throwable == null) {
+                        LOGGER.debug("Retry succeeded on attempt {}", attempt);
+                        recordSuccess(retryConfig);
+                        result.complete(value);
+                        return;
+                    }
+                    Throwable cause = unwrap(throwable);
+                    LOGGER.debug("Retry attempt {} failed", attempt, cause);
+                    recordFailure(retryConfig, cause);
+                    if (!(cause instanceof Exception e)
+                            || shouldAbortRetry(retryConfig, e, attempt)) {
+                        result.completeExceptionally(cause);
+                        return;
+                    }
+                    long sleepDuration =
+                            calculateSleepDuration(retryConfig, attempt + 1, previousSleepDuration);
+                    if (isPastDeadline(retryConfig, sleepDuration)) {
+                        LOGGER.warn(
+                                "Not retrying, as the deadline would pass before the next attempt");
+                        result.completeExceptionally(cause);
+                        return;
+                    }
+                    if (!acquireRetryToken(retryConfig)) {
+                        result.completeExceptionally(cause);
+                        return;
+                    }
+                    CompletableFuture.delayedExecutor(sleepDuration, TimeUnit.MILLISECONDS)
+                            .execute(
+                                    () ->
+                                            attemptAsync(
+                                                    retryConfig,
+                                                    retryable,
+                                                    attempt + 1,
+                                                    sleepDuration,
+                                                    result));
+                });
+    }
+
+    private static void sleep(long sleepDuration) {
+        try {
+            long start = System.currentTimeMillis();
+            LOGGER.debug("Sleeping for {}ms at {}", sleepDuration, start);
+            Thread.sleep(sleepDuration); // NOSONAR
+            long elapsed = System.currentTimeMillis() - start;
+            LOGGER.debug("Slept for {}ms", elapsed);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RetryException(ex);
+        }
+    }
+
+    private static void acquirePermission(RetryConfig retryConfig) {
+        CircuitBreaker circuitBreaker = retryConfig.getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            recordMetric(retryConfig, circuitBreaker.getDependencyName(), CIRCUIT_BREAKER_REJECTED);
+            throw new CircuitBreakerOpenException(
+                    "Circuit breaker for " + circuitBreaker.getDependencyName() + " is open");
+        }
+    }
+
+    private static void recordSuccess(RetryConfig retryConfig) {
+        if (retryConfig.getRetryBudget() != null) {
+            retryConfig.getRetryBudget().recordSuccess();
+        }
+        recordCircuitBreakerSuccess(retryConfig);
+    }
+
+    private static void recordCircuitBreakerSuccess(RetryConfig retryConfig) {
+        CircuitBreaker circuitBreaker = retryConfig.getCircuitBreaker();
+        if (circuitBreaker != null && circuitBreaker.recordSuccess()) {
+            LOGGER.info("Circuit breaker for {} closed", circuitBreaker.getDependencyName());
+            recordMetric(retryConfig, circuitBreaker.getDependencyName(), CIRCUIT_BREAKER_CLOSED);
+        }
+    }
+
+    private static void recordFailure(RetryConfig retryConfig, Throwable throwable) {
+        // A failure matching the abort condition is an answer from the dependency, not an outage,
+        // but it is not a success either, so it does not refill the retry budget
+        if (throwable instanceof Exception e
+                && retryConfig.getAbortCondition() != null
+                && retryConfig.getAbortCondition().test(e)) {
+            recordCircuitBreakerSuccess(retryConfig);
+            return;
+        }
+        CircuitBreaker circuitBreaker = retryConfig.getCircuitBreaker();
+        if (circuitBreaker != null && circuitBreaker.recordFailure()) {
+            LOGGER.warn("Circuit breaker for {} opened", circuitBreaker.getDependencyName());
+            recordMetric(retryConfig, circuitBreaker.getDependencyName(), CIRCUIT_BREAKER_OPENED);
+        }
+    }
+
+    private static boolean acquireRetryToken(RetryConfig retryConfig) {
+        RetryBudget retryBudget = retryConfig.getRetryBudget();
+        if (retryBudget == null || retryBudget.tryAcquire()) {
+            return true;
+        }
+        LOGGER.warn(
+                "Not retrying, as the retry budget for {} is used up",
+                retryBudget.getDependencyName());
+        recordMetric(retryConfig, retryBudget.getDependencyName(), RETRY_BUDGET_EXHAUSTED);
+        return false;
+    }
+
+    private static void recordMetric(
+            RetryConfig retryConfig, String dependencyName, String metric) {
+        if (retryConfig.getEventProbe() != null) {
+            retryConfig.getEventProbe().counterMetric(dependencyName + metric);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
     private static boolean shouldAbortRetry(RetryConfig retryConfig, Exception e, int attempt) {
         return attempt == retryConfig.getMaxAttempts() - 1
                 || (retryConfig.getAbortCondition() != null
-                        && retryConfig.getAbortCondition().test(e));
+                        && retryConfig.getAbortCondition().test(e))
+                || (retryConfig.getCircuitBreaker() != null
+                        && retryConfig.getCircuitBreaker().getState()
+                                != CircuitBreaker.State.CLOSED);
     }
 
-    private static long calculateSleepDuration(RetryConfig retryConfig, int attempt) {
+    private static boolean isPastDeadline(RetryConfig retryConfig, long sleepDuration) {
+        return retryConfig.getDeadline() != null
+                && sleepDuration
+                        > Duration.between(Instant.now(), retryConfig.getDeadline()).toMillis();
+    }
+
+    private static long calculateSleepDuration(
+            RetryConfig retryConfig, int attempt, long previousSleepDuration) {
         if (attempt == 0) {
             return 0;
         }
-        long duration = retryConfig.getDelayBetweenAttempts();
+        long baseDuration = retryConfig.getDelayBetweenAttempts();
+        long maxDuration = retryConfig.getMaxDelayBetweenAttempts();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (retryConfig.getJitter() == RetryConfig.Jitter.DECORRELATED) {
+            long previousDuration = Math.max(baseDuration, previousSleepDuration);
+            long upperBound =
+                    previousDuration > maxDuration / 3 ? maxDuration : previousDuration * 3;
+            return upperBound <= baseDuration
+                    ? upperBound
+                    : random.nextLong(baseDuration, upperBound);
+        }
+
+        long duration = baseDuration;
         if (retryConfig.isExponentiallyRetry()) {
-            duration = (long) (duration * Math.pow(2, attempt));
+            // Doubles the delay for each attempt, saturating rather than overflowing
+            duration =
+                    attempt >= Long.numberOfLeadingZeros(duration)
+                            ? Long.MAX_VALUE
+                            : duration << attempt;
+        }
+        duration = Math.min(duration, maxDuration);
+        if (retryConfig.getJitter() == RetryConfig.Jitter.FULL && duration > 0) {
+            return random.nextLong(duration);
         }
         return duration;
     }
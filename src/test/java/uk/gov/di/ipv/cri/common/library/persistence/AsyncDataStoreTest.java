@@ -0,0 +1,228 @@
+package uk.gov.di.ipv.cri.common.library.persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPage;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetResultPagePublisher;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncDataStoreTest {
+    private static final String TEST_TABLE_NAME = "test-session-table";
+
+    @Mock private DynamoDbEnhancedAsyncClient mockDynamoDbEnhancedAsyncClient;
+    @Mock private DynamoDbAsyncTable<SessionItem> mockDynamoDbAsyncTable;
+
+    private SessionItem sessionItem;
+    private AsyncDataStore<SessionItem> asyncDataStore;
+
+    @BeforeEach
+    void setUp() {
+        when(mockDynamoDbEnhancedAsyncClient.table(
+                        anyString(), ArgumentMatchers.<TableSchema<SessionItem>>any()))
+                .thenReturn(mockDynamoDbAsyncTable);
+
+        sessionItem = new SessionItem();
+
+        asyncDataStore =
+                new AsyncDataStore<>(
+                        TEST_TABLE_NAME, SessionItem.class, mockDynamoDbEnhancedAsyncClient);
+    }
+
+    @Test
+    void shouldPutItemIntoDynamoDbTable() {
+        when(mockDynamoDbAsyncTable.putItem(sessionItem))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        asyncDataStore.create(sessionItem).join();
+
+        verify(mockDynamoDbEnhancedAsyncClient)
+                .table(eq(TEST_TABLE_NAME), ArgumentMatchers.<TableSchema<SessionItem>>any());
+        verify(mockDynamoDbAsyncTable).putItem(sessionItem);
+    }
+
+    @Test
+    void shouldGetItemWithConsistentRead() {
+        ArgumentCaptor<GetItemEnhancedRequest> getItemRequestArgumentCaptor =
+                ArgumentCaptor.forClass(GetItemEnhancedRequest.class);
+        when(mockDynamoDbAsyncTable.getItem(getItemRequestArgumentCaptor.capture()))
+                .thenReturn(CompletableFuture.completedFuture(sessionItem));
+
+        assertEquals(sessionItem, asyncDataStore.getItemWithConsistentRead("session-id").join());
+        assertTrue(getItemRequestArgumentCaptor.getValue().consistentRead());
+        assertEquals(
+                "session-id",
+                getItemRequestArgumentCaptor.getValue().key().partitionKeyValue().s());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldCollectItemsFromEveryPageOfAnIndexQuery() {
+        DynamoDbAsyncIndex<SessionItem> mockIndex = mock(DynamoDbAsyncIndex.class);
+        SdkPublisher<Page<SessionItem>> mockPublisher = mock(SdkPublisher.class);
+        SessionItem otherSessionItem = new SessionItem();
+        when(mockDynamoDbAsyncTable.index("access-token-index")).thenReturn(mockIndex);
+        when(mockIndex.query(any(QueryEnhancedRequest.class))).thenReturn(mockPublisher);
+        when(mockPublisher.subscribe(any(Consumer.class)))
+                .thenAnswer(
+                        invocation -> {
+                            Consumer<Page<SessionItem>> consumer = invocation.getArgument(0);
+                            consumer.accept(Page.create(List.of(sessionItem)));
+                            consumer.accept(Page.create(List.of(otherSessionItem)));
+                            return CompletableFuture.completedFuture(null);
+                        });
+
+        assertEquals(
+                List.of(sessionItem, otherSessionItem),
+                asyncDataStore.getItemByIndex("access-token-index", "token").join());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReadDistinctKeysInBatchesOfAHundred() {
+        when(mockDynamoDbAsyncTable.tableSchema())
+                .thenReturn(TableSchema.fromBean(SessionItem.class));
+        when(mockDynamoDbAsyncTable.tableName()).thenReturn(TEST_TABLE_NAME);
+        ArgumentCaptor<BatchGetItemEnhancedRequest> batchGetRequestCaptor =
+                ArgumentCaptor.forClass(BatchGetItemEnhancedRequest.class);
+        BatchGetResultPagePublisher mockPublisher = mock(BatchGetResultPagePublisher.class);
+        BatchGetResultPage mockPage = mock(BatchGetResultPage.class);
+        when(mockDynamoDbEnhancedAsyncClient.batchGetItem(batchGetRequestCaptor.capture()))
+                .thenReturn(mockPublisher);
+        when(mockPage.resultsForTable(mockDynamoDbAsyncTable)).thenReturn(List.of(sessionItem));
+        when(mockPublisher.subscribe(any(Consumer.class)))
+                .thenAnswer(
+                        invocation -> {
+                            Consumer<BatchGetResultPage> consumer = invocation.getArgument(0);
+                            // A second page holds the keys left unprocessed by the first
+                            consumer.accept(mockPage);
+                            consumer.accept(mockPage);
+                            return CompletableFuture.completedFuture(null);
+                        });
+        List<String> partitionValues = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            partitionValues.add(UUID.randomUUID().toString());
+        }
+        partitionValues.addAll(new ArrayList<>(partitionValues.subList(0, 50)));
+
+        List<SessionItem> items = asyncDataStore.getItemsByPartitionValues(partitionValues).join();
+
+        assertEquals(4, items.size());
+        assertEquals(
+                List.of(100, 50),
+                batchGetRequestCaptor.getAllValues().stream()
+                        .map(request -> request.readBatches().get(0).keysAndAttributes())
+                        .map(keysAndAttributes -> keysAndAttributes.keys().size())
+                        .toList());
+    }
+
+    @Test
+    void shouldWriteItemsInBatchesOfTwentyFiveAndResendUnprocessedItems() {
+        DynamoDbAsyncClient mockDynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
+        AsyncDataStore<SessionItem> dataStore = createDataStore(mockDynamoDbAsyncClient);
+        List<SessionItem> items = createSessionItems(30);
+        ArgumentCaptor<BatchWriteItemRequest> batchWriteRequestCaptor =
+                ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        when(mockDynamoDbAsyncClient.batchWriteItem(batchWriteRequestCaptor.capture()))
+                .thenReturn(CompletableFuture.completedFuture(withUnprocessedItem(items.get(0))))
+                .thenReturn(
+                        CompletableFuture.completedFuture(
+                                BatchWriteItemResponse.builder().build()));
+
+        dataStore.createItems(items).join();
+
+        // The unprocessed item is resent after a backoff, once both batches have been sent
+        assertEquals(
+                List.of(1, 5, 25),
+                batchWriteRequestCaptor.getAllValues().stream()
+                        .map(request -> request.requestItems().get(TEST_TABLE_NAME).size())
+                        .sorted()
+                        .toList());
+    }
+
+    @Test
+    void shouldStopResendingUnprocessedItemsAfterFiveAttempts() {
+        DynamoDbAsyncClient mockDynamoDbAsyncClient = mock(DynamoDbAsyncClient.class);
+        AsyncDataStore<SessionItem> dataStore = createDataStore(mockDynamoDbAsyncClient);
+        List<SessionItem> items = createSessionItems(1);
+        when(mockDynamoDbAsyncClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(withUnprocessedItem(items.get(0))));
+
+        CompletableFuture<Void> result = dataStore.createItems(items);
+
+        assertThrows(CompletionException.class, result::join);
+        verify(mockDynamoDbAsyncClient, times(5)).batchWriteItem(any(BatchWriteItemRequest.class));
+    }
+
+    // Built on a real enhanced client, so that write batches can be created for the table
+    private AsyncDataStore<SessionItem> createDataStore(
+            DynamoDbAsyncClient mockDynamoDbAsyncClient) {
+        return new AsyncDataStore<>(
+                TEST_TABLE_NAME,
+                SessionItem.class,
+                DynamoDbEnhancedAsyncClient.builder()
+                        .dynamoDbClient(mockDynamoDbAsyncClient)
+                        .build());
+    }
+
+    private List<SessionItem> createSessionItems(int count) {
+        List<SessionItem> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SessionItem item = new SessionItem();
+            item.setSessionId(UUID.randomUUID());
+            items.add(item);
+        }
+        return items;
+    }
+
+    private BatchWriteItemResponse withUnprocessedItem(SessionItem item) {
+        PutRequest putRequest =
+                PutRequest.builder()
+                        .item(TableSchema.fromBean(SessionItem.class).itemToMap(item, true))
+                        .build();
+        return BatchWriteItemResponse.builder()
+                .unprocessedItems(
+                        Map.of(
+                                TEST_TABLE_NAME,
+                                List.of(WriteRequest.builder().putRequest(putRequest).build())))
+                .build();
+    }
+}
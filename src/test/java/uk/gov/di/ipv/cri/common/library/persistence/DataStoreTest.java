@@ -10,9 +10,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
 import uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -53,4 +55,18 @@ class DataStoreTest {
                 sessionItem.getSessionId(),
                 authorizationCodeItemArgumentCaptor.getValue().getSessionId());
     }
+
+    @Test
+    void shouldGetItemWithConsistentRead() {
+        ArgumentCaptor<GetItemEnhancedRequest> getItemRequestArgumentCaptor =
+                ArgumentCaptor.forClass(GetItemEnhancedRequest.class);
+        when(mockDynamoDbTable.getItem(getItemRequestArgumentCaptor.capture()))
+                .thenReturn(sessionItem);
+
+        assertEquals(sessionItem, dataStore.getItemWithConsistentRead("session-id"));
+        assertTrue(getItemRequestArgumentCaptor.getValue().consistentRead());
+        assertEquals(
+                "session-id",
+                getItemRequestArgumentCaptor.getValue().key().partitionKeyValue().s());
+    }
 }
@@ -23,8 +23,10 @@ import uk.gov.di.ipv.cri.common.library.exception.SessionValidationException;
 import uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem;
 
 import java.net.URI;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -245,6 +247,31 @@ class AccessTokenServiceTest {
                         "redirect uri http://different-redirectUri does not match configuration uri https://www.example/com/callback"));
     }
 
+    @Test
+    void shouldCreateMacAccessTokenCarryingTheSessionId() {
+        MacAccessTokenService macAccessTokenService =
+                new MacAccessTokenService(() -> Base64.getEncoder().encodeToString(new byte[32]));
+        AccessTokenService macAccessTokenIssuingService =
+                new AccessTokenService(
+                        mockConfigurationService, mockJwtVerifier, macAccessTokenService);
+        when(mockConfigurationService.getBearerAccessTokenTtl()).thenReturn(3600L);
+        when(mockConfigurationService.getBearerAccessTokenExpirationEpoch())
+                .thenReturn(1700003600L);
+        SessionItem sessionItem = new SessionItem();
+        sessionItem.setSessionId(UUID.randomUUID());
+
+        AccessTokenResponse accessTokenResponse =
+                macAccessTokenIssuingService.createToken(mock(TokenRequest.class), sessionItem);
+
+        BearerAccessToken accessToken = accessTokenResponse.getTokens().getBearerAccessToken();
+        assertEquals(3600L, accessToken.getLifetime());
+        assertEquals(
+                Optional.of(
+                        new MacAccessTokenService.VerifiedAccessToken(
+                                sessionItem.getSessionId(), 1700003600L)),
+                macAccessTokenService.verifyToken(accessToken.getValue()));
+    }
+
     @Test
     void shouldCallWriteTokenAndUpdateDataStore() {
         AccessTokenResponse accessTokenResponse = mock(AccessTokenResponse.class);
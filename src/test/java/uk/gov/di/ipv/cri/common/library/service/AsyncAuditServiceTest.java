@@ -0,0 +1,112 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEventType;
+import uk.gov.di.ipv.cri.common.library.exception.SqsException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncAuditServiceTest {
+    private static final String SQS_QUEUE_URL = "https://example-queue-url";
+
+    @Mock private SqsAsyncClient mockSqs;
+    @Mock private ConfigurationService mockConfigurationService;
+    @Mock private AuditEventSerializer mockAuditEventSerializer;
+    @Mock private AuditEventFactory mockAuditEventFactory;
+    private AsyncAuditService asyncAuditService;
+
+    @BeforeEach
+    void setup() {
+        when(mockConfigurationService.getSqsAuditEventQueueUrl()).thenReturn(SQS_QUEUE_URL);
+        asyncAuditService =
+                new AsyncAuditService(
+                        mockSqs,
+                        mockConfigurationService,
+                        mockAuditEventSerializer,
+                        mockAuditEventFactory);
+    }
+
+    @Test
+    void shouldSendMessageToSqsQueue(@Mock AuditEvent<Map<String, Object>> auditEvent)
+            throws JsonProcessingException {
+        Map<String, Object> extensions = Map.of("test", "value");
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageRequest.class);
+        when(mockAuditEventFactory.create(AuditEventType.START.toString(), null, extensions))
+                .thenReturn(auditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
+        when(mockSqs.sendMessage(sendMessageRequestCaptor.capture()))
+                .thenReturn(
+                        CompletableFuture.completedFuture(
+                                SendMessageResponse.builder().messageId("message-id").build()));
+
+        asyncAuditService.sendAuditEvent(AuditEventType.START, extensions).join();
+
+        SendMessageRequest sendMessageRequest = sendMessageRequestCaptor.getValue();
+        assertEquals("serialised audit event", sendMessageRequest.messageBody());
+        assertEquals(SQS_QUEUE_URL, sendMessageRequest.queueUrl());
+    }
+
+    @Test
+    void shouldCompleteExceptionallyWhenSqsFails(@Mock AuditEvent<Object> auditEvent)
+            throws JsonProcessingException {
+        when(mockAuditEventFactory.create(AuditEventType.START.toString(), null, null))
+                .thenReturn(auditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
+        SdkClientException sqsFailure = SdkClientException.create("Queue unavailable");
+        when(mockSqs.sendMessage(any(SendMessageRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(sqsFailure));
+
+        CompletableFuture<Void> result = asyncAuditService.sendAuditEvent(AuditEventType.START);
+
+        // The SDK's exception is left as it is, as AuditService throws it
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertSame(sqsFailure, exception.getCause());
+    }
+
+    @Test
+    void shouldCompleteExceptionallyWhenSerialisationFails(@Mock AuditEvent<Object> auditEvent)
+            throws JsonProcessingException {
+        when(mockAuditEventFactory.create("CUSTOM_AUDIT_EVENT_TYPE", null, null))
+                .thenReturn(auditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenThrow(mock(JsonProcessingException.class));
+
+        CompletableFuture<Void> result =
+                asyncAuditService.sendAuditEvent("CUSTOM_AUDIT_EVENT_TYPE");
+
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(SqsException.class, exception.getCause());
+        verify(mockSqs, never()).sendMessage(any(SendMessageRequest.class));
+    }
+
+    private static AuditEventSerializer.SerialisedAuditEvent serialised(String json) {
+        return new AuditEventSerializer.SerialisedAuditEvent(json, json.length());
+    }
+}
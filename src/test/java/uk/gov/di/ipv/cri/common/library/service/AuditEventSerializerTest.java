@@ -0,0 +1,65 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
+import uk.gov.di.ipv.cri.common.library.service.AuditEventSerializer.SerialisedAuditEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditEventSerializerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    void shouldSerialiseAuditEventWithExtensions() throws JsonProcessingException {
+        AuditEvent<Map<String, Object>> auditEvent = createAuditEvent();
+        auditEvent.setExtensions(Map.of("evidence", "value"));
+
+        SerialisedAuditEvent serialisedAuditEvent =
+                new AuditEventSerializer(OBJECT_MAPPER).serialise(auditEvent);
+
+        JsonNode json = OBJECT_MAPPER.readTree(serialisedAuditEvent.json());
+        assertEquals("IPV_TEST_EVENT", json.get("event_name").asText());
+        assertEquals("https://example.com/issuer", json.get("component_id").asText());
+        assertEquals("value", json.get("extensions").get("evidence").asText());
+    }
+
+    @Test
+    void shouldNotRegisterModulesOnTheCallersObjectMapper() throws JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        AuditEvent<Map<String, Object>> auditEvent = createAuditEvent();
+        auditEvent.setExtensions(Map.of("date", LocalDate.of(2024, 1, 2)));
+
+        SerialisedAuditEvent serialisedAuditEvent =
+                new AuditEventSerializer(objectMapper).serialise(auditEvent);
+
+        assertTrue(objectMapper.getRegisteredModuleIds().isEmpty());
+        assertTrue(serialisedAuditEvent.json().contains("2024"));
+    }
+
+    @Test
+    void shouldReportTheUtf8EncodedSize() throws JsonProcessingException {
+        AuditEventSerializer auditEventSerializer = new AuditEventSerializer(OBJECT_MAPPER);
+        AuditEvent<Map<String, Object>> auditEvent = createAuditEvent();
+        auditEvent.setExtensions(Map.of("name", "Zoë Ní Bhriain €"));
+
+        SerialisedAuditEvent first = auditEventSerializer.serialise(auditEvent);
+        SerialisedAuditEvent second = auditEventSerializer.serialise(auditEvent);
+
+        assertEquals(first.json().getBytes(StandardCharsets.UTF_8).length, first.sizeInBytes());
+        assertTrue(first.sizeInBytes() > first.json().length());
+        assertEquals(first, second);
+    }
+
+    private static AuditEvent<Map<String, Object>> createAuditEvent() {
+        return new AuditEvent<>(
+                1700000000L, 1700000000000L, "IPV_TEST_EVENT", "https://example.com/issuer");
+    }
+}
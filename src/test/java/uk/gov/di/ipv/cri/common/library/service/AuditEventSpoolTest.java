@@ -0,0 +1,127 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.gov.di.ipv.cri.common.library.service.AuditEventSpool.SpooledAuditEvent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditEventSpoolTest {
+    @TempDir private Path tempDir;
+
+    @Test
+    void shouldReadBackAppendedEventsInOrder() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+
+        assertTrue(auditEventSpool.append(List.of("event 1", "event 2")));
+        assertTrue(auditEventSpool.append(List.of("event 3")));
+
+        assertEquals(
+                List.of("event 1", "event 2", "event 3"),
+                auditEventSpool.read().stream().map(SpooledAuditEvent::json).toList());
+    }
+
+    @Test
+    void shouldNotAppendPastTheSizeLimit() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(100, 0);
+
+        assertTrue(auditEventSpool.append(List.of("event 1")));
+        assertFalse(auditEventSpool.append(List.of("x".repeat(100))));
+
+        assertEquals(1, auditEventSpool.read().size());
+    }
+
+    @Test
+    void shouldShareTheSizeLimitWithAnotherSpoolOnTheSameFile() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(100, 0);
+        AuditEventSpool otherAuditEventSpool = createAuditEventSpool(100, 0);
+
+        assertTrue(auditEventSpool.append(List.of("x".repeat(40))));
+        assertFalse(otherAuditEventSpool.append(List.of("x".repeat(40))));
+
+        assertEquals(1, otherAuditEventSpool.read().size());
+    }
+
+    @Test
+    void shouldKeepAPrettyPrintedEventOnOneLine() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+
+        auditEventSpool.append(List.of("{\n  \"event_name\": \"START\"\r\n}"));
+
+        assertEquals(
+                List.of("{   \"event_name\": \"START\"  }"),
+                auditEventSpool.read().stream().map(SpooledAuditEvent::json).toList());
+    }
+
+    @Test
+    void shouldKeepEventsThatWereNotRemoved() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+        auditEventSpool.append(List.of("event 1", "event 2"));
+        List<SpooledAuditEvent> spooledEvents = auditEventSpool.read();
+
+        auditEventSpool.remove(Set.of(spooledEvents.get(0).id()));
+
+        assertEquals(List.of(spooledEvents.get(1)), auditEventSpool.read());
+        auditEventSpool.remove(Set.of(spooledEvents.get(1).id()));
+        assertFalse(Files.exists(tempDir.resolve("spool")));
+        assertFalse(auditEventSpool.isDrainDue());
+    }
+
+    @Test
+    void shouldPickUpEventsSpooledByAnEarlierInvocation() {
+        createAuditEventSpool(1024, 0).append(List.of("event 1"));
+
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+
+        assertTrue(auditEventSpool.isDrainDue());
+        assertEquals(1, auditEventSpool.read().size());
+    }
+
+    @Test
+    void shouldSkipAPartlyWrittenLine() throws IOException {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+        auditEventSpool.append(List.of("event 1"));
+        Files.writeString(
+                tempDir.resolve("spool"),
+                "partial",
+                StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        assertEquals(1, auditEventSpool.read().size());
+    }
+
+    @Test
+    void shouldNotRewriteTheSpoolWhenItCannotBeRead() throws IOException {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 0);
+        auditEventSpool.append(List.of("event 1"));
+        Files.write(tempDir.resolve("spool"), new byte[] {(byte) 0xFF}, StandardOpenOption.APPEND);
+        long spoolSize = Files.size(tempDir.resolve("spool"));
+
+        auditEventSpool.remove(Set.of("unknown id"));
+
+        assertEquals(spoolSize, Files.size(tempDir.resolve("spool")));
+    }
+
+    @Test
+    void shouldNotBeDueForDrainingUntilTheIntervalHasPassed() {
+        AuditEventSpool auditEventSpool = createAuditEventSpool(1024, 60_000);
+
+        auditEventSpool.append(List.of("event 1"));
+
+        assertFalse(auditEventSpool.isDrainDue());
+    }
+
+    private AuditEventSpool createAuditEventSpool(long maxBytes, long drainIntervalMillis) {
+        return new AuditEventSpool(tempDir.resolve("spool"), maxBytes, drainIntervalMillis);
+    }
+}
@@ -1,16 +1,23 @@
 package uk.gov.di.ipv.cri.common.library.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchRequestTooLongException;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.InvalidMessageContentsException;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
 import uk.gov.di.ipv.cri.common.library.domain.AuditEvent;
@@ -20,12 +27,20 @@ import uk.gov.di.ipv.cri.common.library.domain.personidentity.PersonIdentityDeta
 import uk.gov.di.ipv.cri.common.library.exception.SqsException;
 import uk.gov.di.ipv.cri.common.library.persistence.item.SessionItem;
 
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,17 +50,19 @@ class AuditServiceTest {
 
     @Mock private SqsClient mockSqs;
     @Mock private ConfigurationService mockConfigurationService;
-    @Mock private ObjectMapper mockObjectMapper;
+    @Mock private AuditEventSerializer mockAuditEventSerializer;
     @Mock private AuditEventFactory mockAuditEventFactory;
     private AuditService auditService;
 
     @BeforeEach
     void setup() {
         when(mockConfigurationService.getSqsAuditEventQueueUrl()).thenReturn(SQS_QUEUE_URL);
-        when(mockObjectMapper.registerModule(any())).thenReturn(mockObjectMapper);
         auditService =
                 new AuditService(
-                        mockSqs, mockConfigurationService, mockObjectMapper, mockAuditEventFactory);
+                        mockSqs,
+                        mockConfigurationService,
+                        mockAuditEventSerializer,
+                        mockAuditEventFactory);
     }
 
     @Test
@@ -57,7 +74,8 @@ class AuditServiceTest {
 
         when(mockAuditEventFactory.create(AuditEventType.START.toString(), null, null))
                 .thenReturn(auditEvent);
-        when(mockObjectMapper.writeValueAsString(auditEvent)).thenReturn(serialisedAuditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised(serialisedAuditEvent));
 
         SendMessageResponse mockSendMessageResponse = mock(SendMessageResponse.class);
         when(mockSqs.sendMessage(sqsSendMessageRequestCaptor.capture()))
@@ -67,7 +85,7 @@ class AuditServiceTest {
         SendMessageRequest capturedValue = sqsSendMessageRequestCaptor.getValue();
         verify(mockSqs).sendMessage(capturedValue);
         verify(mockAuditEventFactory).create("START", null, null);
-        verify(mockObjectMapper).writeValueAsString(auditEvent);
+        verify(mockAuditEventSerializer).serialise(auditEvent);
         assertEquals(serialisedAuditEvent, capturedValue.messageBody());
         assertEquals(SQS_QUEUE_URL, capturedValue.queueUrl());
     }
@@ -82,7 +100,8 @@ class AuditServiceTest {
                         new SessionItem());
         when(mockAuditEventFactory.create(AuditEventType.START.toString(), auditEventContext, null))
                 .thenReturn(auditEvent);
-        when(mockObjectMapper.writeValueAsString(auditEvent)).thenReturn("serialised audit event");
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
 
         auditService.sendAuditEvent(AuditEventType.START, auditEventContext);
 
@@ -98,11 +117,12 @@ class AuditServiceTest {
         when(mockAuditEventFactory.create(
                         AuditEventType.START.toString(), null, extensionsDataEntries))
                 .thenReturn(auditEvent);
-        when(mockObjectMapper.writeValueAsString(auditEvent)).thenReturn("serialised audit event");
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
         auditService.sendAuditEvent(AuditEventType.START, extensionsDataEntries);
         verify(mockAuditEventFactory)
                 .create(AuditEventType.START.toString(), null, extensionsDataEntries);
-        verify(mockObjectMapper).writeValueAsString(auditEvent);
+        verify(mockAuditEventSerializer).serialise(auditEvent);
         verify(mockSqs).sendMessage(any(SendMessageRequest.class));
     }
 
@@ -111,7 +131,7 @@ class AuditServiceTest {
             throws JsonProcessingException {
         String audiEventType = "CUSTOM_AUDIT_EVENT_TYPE";
         when(mockAuditEventFactory.create(audiEventType, null, null)).thenReturn(auditEvent);
-        when(mockObjectMapper.writeValueAsString(auditEvent))
+        when(mockAuditEventSerializer.serialise(auditEvent))
                 .thenThrow(mock(JsonProcessingException.class));
 
         assertThrows(
@@ -129,8 +149,297 @@ class AuditServiceTest {
                         new AuditService(
                                 mockSqs,
                                 mockConfigurationService,
-                                mockObjectMapper,
+                                mockAuditEventSerializer,
                                 mockAuditEventFactory),
                 "Null or empty queue url provided by configuration service");
     }
+
+    @Test
+    void shouldBufferAuditEventsUntilFlushed(@Mock AuditEvent<Object> auditEvent)
+            throws SqsException, JsonProcessingException {
+        AuditService bufferingAuditService = createBufferingAuditService(auditEvent);
+        ArgumentCaptor<SendMessageBatchRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        when(mockSqs.sendMessageBatch(batchRequestCaptor.capture()))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        bufferingAuditService.sendAuditEvent(AuditEventType.START);
+        bufferingAuditService.sendAuditEvent(AuditEventType.END);
+        verify(mockSqs, never()).sendMessageBatch(any(SendMessageBatchRequest.class));
+
+        bufferingAuditService.flush();
+        bufferingAuditService.flush();
+
+        verify(mockSqs, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(mockSqs, never()).sendMessage(any(SendMessageRequest.class));
+        SendMessageBatchRequest batchRequest = batchRequestCaptor.getValue();
+        assertEquals(SQS_QUEUE_URL, batchRequest.queueUrl());
+        assertEquals(
+                List.of("serialised audit event", "serialised audit event"),
+                batchRequest.entries().stream()
+                        .map(SendMessageBatchRequestEntry::messageBody)
+                        .toList());
+    }
+
+    @Test
+    void shouldSendBatchOnceTenAuditEventsAreBuffered(@Mock AuditEvent<Object> auditEvent)
+            throws SqsException, JsonProcessingException {
+        AuditService bufferingAuditService = createBufferingAuditService(auditEvent);
+        ArgumentCaptor<SendMessageBatchRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        when(mockSqs.sendMessageBatch(batchRequestCaptor.capture()))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        for (int i = 0; i < 11; i++) {
+            bufferingAuditService.sendAuditEvent(AuditEventType.START);
+        }
+        bufferingAuditService.flush();
+
+        verify(mockSqs, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertEquals(10, batchRequestCaptor.getAllValues().get(0).entries().size());
+        assertEquals(1, batchRequestCaptor.getAllValues().get(1).entries().size());
+    }
+
+    @Test
+    void shouldResendOnlyTheFailedEntriesOfABatch(@Mock AuditEvent<Object> auditEvent)
+            throws SqsException, JsonProcessingException {
+        AuditService bufferingAuditService = createBufferingAuditService(auditEvent);
+        ArgumentCaptor<SendMessageBatchRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        when(mockSqs.sendMessageBatch(batchRequestCaptor.capture()))
+                .thenReturn(
+                        SendMessageBatchResponse.builder()
+                                .failed(createBatchResultError("1", false))
+                                .build())
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        bufferingAuditService.sendAuditEvent(AuditEventType.START);
+        bufferingAuditService.sendAuditEvent(AuditEventType.END);
+        bufferingAuditService.flush();
+
+        verify(mockSqs, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        List<SendMessageBatchRequestEntry> resentEntries =
+                batchRequestCaptor.getAllValues().get(1).entries();
+        assertEquals(1, resentEntries.size());
+        assertEquals("1", resentEntries.get(0).id());
+    }
+
+    @Test
+    void shouldThrowSqsExceptionWhenABatchEntryHasASenderFault(@Mock AuditEvent<Object> auditEvent)
+            throws SqsException, JsonProcessingException {
+        AuditService bufferingAuditService = createBufferingAuditService(auditEvent);
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(
+                        SendMessageBatchResponse.builder()
+                                .failed(createBatchResultError("0", true))
+                                .build());
+
+        bufferingAuditService.sendAuditEvent(AuditEventType.START);
+
+        assertThrows(SqsException.class, bufferingAuditService::flush);
+        verify(mockSqs, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void shouldKeepResendingThrottledEntriesWhenAnotherEntryHasASenderFault(
+            @Mock AuditEvent<Object> auditEvent) throws JsonProcessingException, SqsException {
+        AuditService bufferingAuditService = createBufferingAuditService(auditEvent);
+        ArgumentCaptor<SendMessageBatchRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        when(mockSqs.sendMessageBatch(batchRequestCaptor.capture()))
+                .thenReturn(
+                        SendMessageBatchResponse.builder()
+                                .failed(
+                                        createBatchResultError("0", true),
+                                        createBatchResultError("1", false))
+                                .build())
+                .thenReturn(
+                        SendMessageBatchResponse.builder()
+                                .failed(createBatchResultError("1", false))
+                                .build())
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        bufferingAuditService.sendAuditEvent(AuditEventType.START);
+        bufferingAuditService.sendAuditEvent(AuditEventType.START);
+        bufferingAuditService.sendAuditEvent(AuditEventType.END);
+
+        SqsException exception = assertThrows(SqsException.class, bufferingAuditService::flush);
+        assertTrue(exception.getMessage().startsWith("Failed to send 1 of 3 audit events"));
+        verify(mockSqs, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        for (SendMessageBatchRequest resentRequest :
+                batchRequestCaptor.getAllValues().subList(1, 3)) {
+            assertEquals(
+                    List.of("1"),
+                    resentRequest.entries().stream()
+                            .map(SendMessageBatchRequestEntry::id)
+                            .toList());
+        }
+    }
+
+    @Test
+    void shouldSpoolAuditEventWhenSqsIsUnavailable(
+            @Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws SqsException, JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 1024, 0);
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        when(mockSqs.sendMessage(any(SendMessageRequest.class)))
+                .thenThrow(SdkClientException.create("Unable to execute HTTP request"));
+
+        spoolingAuditService.sendAuditEvent(AuditEventType.START);
+
+        List<AuditEventSpool.SpooledAuditEvent> spooledEvents = auditEventSpool.read();
+        assertEquals(1, spooledEvents.size());
+        assertEquals("serialised audit event", spooledEvents.get(0).json());
+    }
+
+    @Test
+    void shouldThrowWhenTheSpoolIsFull(@Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 10, 0);
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        when(mockSqs.sendMessage(any(SendMessageRequest.class)))
+                .thenThrow(SdkClientException.create("Unable to execute HTTP request"));
+
+        assertThrows(
+                SdkClientException.class,
+                () -> spoolingAuditService.sendAuditEvent(AuditEventType.START));
+        assertTrue(auditEventSpool.read().isEmpty());
+    }
+
+    @Test
+    void shouldDrainTheSpoolBeforeSendingTheNextAuditEvent(
+            @Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws SqsException, JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 1024, 0);
+        auditEventSpool.append(List.of("spooled audit event 1", "spooled audit event 2"));
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        List<AuditEventSpool.SpooledAuditEvent> spooledEvents = auditEventSpool.read();
+        ArgumentCaptor<SendMessageBatchRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        when(mockSqs.sendMessageBatch(batchRequestCaptor.capture()))
+                .thenReturn(
+                        SendMessageBatchResponse.builder()
+                                .failed(createBatchResultError(spooledEvents.get(1).id(), false))
+                                .build());
+
+        spoolingAuditService.sendAuditEvent(AuditEventType.START);
+
+        verify(mockSqs, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(mockSqs).sendMessage(any(SendMessageRequest.class));
+        assertEquals(
+                List.of(spooledEvents.get(0).id(), spooledEvents.get(1).id()),
+                batchRequestCaptor.getAllValues().get(0).entries().stream()
+                        .map(SendMessageBatchRequestEntry::id)
+                        .toList());
+        assertEquals(List.of(spooledEvents.get(1)), auditEventSpool.read());
+    }
+
+    @Test
+    void shouldOnlyDrainOneBatchBeforeSendingTheNextAuditEvent(
+            @Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws SqsException, JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 2048, 0);
+        auditEventSpool.append(
+                IntStream.range(0, 15).mapToObj(i -> "spooled audit event " + i).toList());
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(SendMessageBatchResponse.builder().build());
+
+        spoolingAuditService.sendAuditEvent(AuditEventType.START);
+
+        verify(mockSqs, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertEquals(5, auditEventSpool.read().size());
+
+        spoolingAuditService.drainSpool();
+
+        verify(mockSqs, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        assertTrue(auditEventSpool.read().isEmpty());
+    }
+
+    @Test
+    void shouldNotSpoolAnAuditEventThatSqsRejects(
+            @Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 1024, 0);
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        when(mockSqs.sendMessage(any(SendMessageRequest.class)))
+                .thenThrow(
+                        InvalidMessageContentsException.builder()
+                                .statusCode(400)
+                                .message("Invalid message contents")
+                                .build());
+
+        assertThrows(
+                InvalidMessageContentsException.class,
+                () -> spoolingAuditService.sendAuditEvent(AuditEventType.START));
+        assertTrue(auditEventSpool.read().isEmpty());
+    }
+
+    @Test
+    void shouldDropASpooledAuditEventThatSqsRejectsOnItsOwn(
+            @Mock AuditEvent<Object> auditEvent, @TempDir Path tempDir)
+            throws SqsException, JsonProcessingException {
+        AuditEventSpool auditEventSpool = new AuditEventSpool(tempDir.resolve("spool"), 1024, 0);
+        auditEventSpool.append(List.of("spooled audit event", "rejected audit event"));
+        AuditService spoolingAuditService = createSpoolingAuditService(auditEvent, auditEventSpool);
+        when(mockSqs.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenThrow(
+                        BatchRequestTooLongException.builder()
+                                .statusCode(400)
+                                .message("Batch request too long")
+                                .build())
+                .thenReturn(SendMessageBatchResponse.builder().build())
+                .thenThrow(
+                        InvalidMessageContentsException.builder()
+                                .statusCode(400)
+                                .message("Invalid message contents")
+                                .build());
+
+        spoolingAuditService.sendAuditEvent(AuditEventType.START);
+
+        verify(mockSqs, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+        verify(mockSqs).sendMessage(any(SendMessageRequest.class));
+        assertTrue(auditEventSpool.read().isEmpty());
+    }
+
+    private AuditService createSpoolingAuditService(
+            AuditEvent<Object> auditEvent, AuditEventSpool auditEventSpool)
+            throws JsonProcessingException {
+        when(mockAuditEventFactory.create(anyString(), isNull(), isNull())).thenReturn(auditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
+        return new AuditService(
+                mockSqs,
+                mockConfigurationService,
+                mockAuditEventSerializer,
+                mockAuditEventFactory,
+                false,
+                auditEventSpool);
+    }
+
+    private AuditService createBufferingAuditService(AuditEvent<Object> auditEvent)
+            throws JsonProcessingException {
+        when(mockAuditEventFactory.create(anyString(), isNull(), isNull())).thenReturn(auditEvent);
+        when(mockAuditEventSerializer.serialise(auditEvent))
+                .thenReturn(serialised("serialised audit event"));
+        return new AuditService(
+                mockSqs,
+                mockConfigurationService,
+                mockAuditEventSerializer,
+                mockAuditEventFactory,
+                true);
+    }
+
+    private BatchResultErrorEntry createBatchResultError(String id, boolean senderFault) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .code("InternalError")
+                .message("Failed to send message")
+                .senderFault(senderFault)
+                .build();
+    }
+
+    private static AuditEventSerializer.SerialisedAuditEvent serialised(String json) {
+        return new AuditEventSerializer.SerialisedAuditEvent(json, json.length());
+    }
 }
@@ -5,7 +5,12 @@ import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.crypto.ECDSASigner;
 import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.impl.ECDSA;
+import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.oauth2.sdk.id.ClientID;
@@ -27,6 +32,7 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -183,8 +189,8 @@ class JWTVerifierTest {
 
         when(mockJwkKeyCache.isUsingPublicJwk()).thenReturn(Boolean.TRUE);
 
-        when(mockJwkKeyCache.getBase64JwkForKid(clientConfigMap.get("jwksEndpoint"), testKeyId))
-                .thenReturn(Optional.of(clientConfigMap.get("publicSigningJwkBase64")));
+        when(mockJwkKeyCache.getSigningJwkForKid(clientConfigMap.get("jwksEndpoint"), testKeyId))
+                .thenReturn(Optional.of(getECPublicJwk(clientConfigMap)));
 
         SignedJWT signedJWT =
                 new SignedJWT(
@@ -247,7 +253,7 @@ class JWTVerifierTest {
 
         when(mockJwkKeyCache.isUsingPublicJwk()).thenReturn(Boolean.TRUE);
 
-        when(mockJwkKeyCache.getBase64JwkForKid(clientConfigMap.get("jwksEndpoint"), testKeyId))
+        when(mockJwkKeyCache.getSigningJwkForKid(clientConfigMap.get("jwksEndpoint"), testKeyId))
                 .thenReturn(Optional.empty());
 
         SignedJWT signedJWT =
@@ -273,6 +279,103 @@ class JWTVerifierTest {
                                 .verifyAccessTokenJWT(clientConfigMap, signedJWT, CLIENT_ID));
     }
 
+    @Test
+    void shouldValidateJWTSignedWithRSAKey()
+            throws InvalidKeySpecException, NoSuchAlgorithmException, JOSEException {
+        Map<String, String> clientConfigMap = getSSMClientConfig();
+        SignedJWT signedJWT =
+                new SignedJWT(
+                        new JWSHeader.Builder(JWSAlgorithm.RS256).build(),
+                        new JWTClaimsSet.Builder()
+                                .jwtID(UUID.randomUUID().toString())
+                                .issuer(CLIENT_ID.getValue())
+                                .notBeforeTime(Date.from(NOW))
+                                .subject(CLIENT_ID.getValue())
+                                .audience("https://address.cri.account.gov.uk")
+                                .expirationTime(Date.from(NOW.plus(1, ChronoUnit.HOURS)))
+                                .build());
+        RSASSASigner rsaSigner = new RSASSASigner(getPrivateKey());
+        signedJWT.sign(rsaSigner);
+
+        assertDoesNotThrow(
+                () ->
+                        new JWTVerifier()
+                                .verifyAccessTokenJWT(clientConfigMap, signedJWT, CLIENT_ID));
+    }
+
+    @Test
+    void shouldValidateJWTWithDerEncodedECSignature() throws JOSEException, ParseException {
+        when(mockJwkKeyCache.isUsingPublicJwk()).thenReturn(Boolean.FALSE);
+
+        Map<String, String> clientConfigMap = getECSSMClientConfig();
+        SignedJWT signedJWT =
+                new SignedJWT(
+                        new JWSHeader.Builder(JWSAlgorithm.ES256).build(),
+                        new JWTClaimsSet.Builder()
+                                .jwtID(UUID.randomUUID().toString())
+                                .issuer(CLIENT_ID.getValue())
+                                .notBeforeTime(Date.from(NOW))
+                                .audience("https://address.cri.account.gov.uk")
+                                .subject(CLIENT_ID.getValue())
+                                .expirationTime(Date.from(NOW.plus(1, ChronoUnit.HOURS)))
+                                .build());
+        signedJWT.sign(new ECDSASigner(getECPrivateKey()));
+
+        SignedJWT derSignedJWT =
+                new SignedJWT(
+                        signedJWT.getHeader().toBase64URL(),
+                        signedJWT.getPayload().toBase64URL(),
+                        Base64URL.encode(
+                                ECDSA.transcodeSignatureToDER(
+                                        signedJWT.getSignature().decode())));
+
+        assertDoesNotThrow(
+                () ->
+                        new JWTVerifier(mockJwkKeyCache)
+                                .verifyAccessTokenJWT(clientConfigMap, derSignedJWT, CLIENT_ID));
+    }
+
+    @Test
+    void shouldReuseVerifierUntilPublicJwkChanges() throws JOSEException, ParseException {
+        Map<String, String> clientConfigMap = getECSSMClientConfig();
+        final String testKeyId = UUID.randomUUID().toString();
+        final JWK rotatedPublicJwk = new ECKeyGenerator(Curve.P_256).generate().toPublicJWK();
+
+        when(mockJwkKeyCache.isUsingPublicJwk()).thenReturn(Boolean.TRUE);
+        when(mockJwkKeyCache.getSigningJwkForKid(clientConfigMap.get("jwksEndpoint"), testKeyId))
+                .thenReturn(Optional.of(getECPublicJwk(clientConfigMap)))
+                .thenReturn(Optional.of(getECPublicJwk(clientConfigMap)))
+                .thenReturn(Optional.of(rotatedPublicJwk));
+
+        SignedJWT signedJWT =
+                new SignedJWT(
+                        new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(testKeyId).build(),
+                        new JWTClaimsSet.Builder()
+                                .jwtID(UUID.randomUUID().toString())
+                                .issuer(CLIENT_ID.getValue())
+                                .notBeforeTime(Date.from(NOW))
+                                .audience("https://address.cri.account.gov.uk")
+                                .subject(CLIENT_ID.getValue())
+                                .expirationTime(Date.from(NOW.plus(1, ChronoUnit.HOURS)))
+                                .build());
+        signedJWT.sign(new ECDSASigner(getECPrivateKey()));
+
+        JWTVerifier jwtVerifier = new JWTVerifier(mockJwkKeyCache);
+
+        assertDoesNotThrow(
+                () -> jwtVerifier.verifyAccessTokenJWT(clientConfigMap, signedJWT, CLIENT_ID));
+        assertDoesNotThrow(
+                () -> jwtVerifier.verifyAccessTokenJWT(clientConfigMap, signedJWT, CLIENT_ID));
+
+        SessionValidationException exception =
+                assertThrows(
+                        SessionValidationException.class,
+                        () ->
+                                jwtVerifier.verifyAccessTokenJWT(
+                                        clientConfigMap, signedJWT, CLIENT_ID));
+        assertEquals("JWT signature verification failed", exception.getMessage());
+    }
+
     @Test
     void shouldThrowValidationExceptionWhenJWTIsExpired()
             throws InvalidKeySpecException, NoSuchAlgorithmException, JOSEException {
@@ -333,6 +436,41 @@ class JWTVerifierTest {
                 exception.getMessage());
     }
 
+    @Test
+    void shouldApplyEachClientsAudienceWhenReusingVerifier()
+            throws InvalidKeySpecException, NoSuchAlgorithmException, JOSEException {
+        Map<String, String> clientConfigMap = getSSMClientConfig();
+        Map<String, String> otherClientConfigMap = new HashMap<>(clientConfigMap);
+        otherClientConfigMap.put("audience", "https://kbv.cri.account.gov.uk");
+        SignedJWT signedJWT =
+                new SignedJWT(
+                        new JWSHeader.Builder(JWSAlgorithm.RS256).build(),
+                        new JWTClaimsSet.Builder()
+                                .jwtID(UUID.randomUUID().toString())
+                                .issuer(CLIENT_ID.getValue())
+                                .notBeforeTime(Date.from(NOW))
+                                .audience("https://address.cri.account.gov.uk")
+                                .subject(CLIENT_ID.getValue())
+                                .expirationTime(Date.from(NOW.plus(1, ChronoUnit.HOURS)))
+                                .build());
+        signedJWT.sign(new RSASSASigner(getPrivateKey()));
+
+        JWTVerifier jwtVerifier = new JWTVerifier();
+
+        assertDoesNotThrow(
+                () -> jwtVerifier.verifyAccessTokenJWT(clientConfigMap, signedJWT, CLIENT_ID));
+        SessionValidationException exception =
+                assertThrows(
+                        SessionValidationException.class,
+                        () ->
+                                jwtVerifier.verifyAccessTokenJWT(
+                                        otherClientConfigMap, signedJWT, CLIENT_ID));
+
+        assertEquals(
+                "JWT aud claim has value [https://address.cri.account.gov.uk], must be [https://kbv.cri.account.gov.uk]",
+                exception.getMessage());
+    }
+
     @Test
     void shouldThrowValidationExceptionWhenJWTNotBeforeTimeIsInThePast()
             throws InvalidKeySpecException, NoSuchAlgorithmException, JOSEException {
@@ -425,6 +563,12 @@ class JWTVerifierTest {
                                 new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKey)));
     }
 
+    private JWK getECPublicJwk(Map<String, String> clientConfigMap) throws ParseException {
+        return JWK.parse(
+                new String(
+                        Base64.getDecoder().decode(clientConfigMap.get("publicSigningJwkBase64"))));
+    }
+
     private ECKey getECPrivateKey() throws ParseException {
         String privateSigningJwkBase64 =
                 "ewogICAgImt0eSI6ICJFQyIsCiAgICAiZCI6ICI1MzRnaFRadVN0UkE4SFQwY0Y0NFprWl84YTkwWTJiY3R5akdKekpoVG8wIiwKICAgICJ1c2UiOiAic2lnIiwKICAgICJjcnYiOiAiUC0yNTYiLAogICAgImtpZCI6ICJpcHYtY29yZS1zdHViLTEtZnJvbS1ta2p3ay5vcmciLAogICAgIngiOiAiSWZSMVB6OU91Y0kyWXdiV0pUYS1PeHQwMnpfemdORHlGa2hwZnc4UVdyMCIsCiAgICAieSI6ICJYajZqUnpLQTBRZVNMQy1lMTVtWDdTaG5wb3FnRzh3UXdlZzA2WElhMERzIiwKICAgICJhbGciOiAiRVMyNTYiCn0=";
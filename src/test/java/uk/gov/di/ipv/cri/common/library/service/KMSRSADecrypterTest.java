@@ -16,6 +16,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
 import software.amazon.awssdk.services.kms.KmsClient;
 import software.amazon.awssdk.services.kms.model.DecryptRequest;
 import software.amazon.awssdk.services.kms.model.DecryptResponse;
@@ -28,6 +29,10 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -36,6 +41,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(SystemStubsExtension.class)
@@ -48,6 +54,7 @@ class KMSRSADecrypterTest {
     private static final String TEST_KEY_ID = "test-key";
     private static final String ALL_ALIASES_UNAVAILABLE = "all_aliases_unavailable_for_decryption";
     @Mock private KmsClient mockKmsClient;
+    @Mock private KmsAsyncClient mockKmsAsyncClient;
     @Mock private EventProbe mockeventProbe;
     private static final String SESSION_DECRYPTION_KEY_PRIMARY_ALIAS =
             "session_decryption_key_active_alias";
@@ -60,6 +67,9 @@ class KMSRSADecrypterTest {
     void setup() {
         environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "false");
         environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION_LEGACY_KEY_FALLBACK", "false");
+        environmentVariables.remove("KMS_DECRYPTION_ALIAS_FAILURE_THRESHOLD");
+        environmentVariables.remove("KMS_DECRYPTION_HEDGE_DELAY_MILLIS");
+        environmentVariables.remove("KMS_DECRYPTION_TIMEOUT_MILLIS");
     }
 
     @Nested
@@ -326,6 +336,64 @@ class KMSRSADecrypterTest {
             assertEquals("urn:uuid:8d097496-4410-49db-acdb-ffdca993fd2f", claims.getSubject());
             assertEquals("ipv-core-stub", claims.getIssuer());
         }
+
+        @Test
+        void shouldTryTheLastSuccessfulAliasFirst() throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(TEST_KEY_ID, mockKmsClient, mockeventProbe);
+            when(mockKmsClient.decrypt(any(DecryptRequest.class)))
+                    .thenThrow(new RuntimeException("primary key failed to decrypt"))
+                    .thenThrow(new RuntimeException("secondary key failed to decrypt"))
+                    .thenReturn(createDecryptResponse());
+
+            decryptTestJwe(kmsRsaDecrypter);
+            decryptTestJwe(kmsRsaDecrypter);
+
+            ArgumentCaptor<DecryptRequest> decryptRequestArgumentCaptor =
+                    ArgumentCaptor.forClass(DecryptRequest.class);
+            verify(mockKmsClient, times(4)).decrypt(decryptRequestArgumentCaptor.capture());
+            assertEquals(
+                    List.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS),
+                    decryptRequestArgumentCaptor.getAllValues().stream()
+                            .map(DecryptRequest::keyId)
+                            .toList());
+        }
+
+        @Test
+        void shouldTryAliasesInCoolDownLast() throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            environmentVariables.set("KMS_DECRYPTION_ALIAS_FAILURE_THRESHOLD", "1");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(TEST_KEY_ID, mockKmsClient, mockeventProbe);
+            when(mockKmsClient.decrypt(any(DecryptRequest.class)))
+                    .thenThrow(new RuntimeException("primary key failed to decrypt"))
+                    .thenReturn(createDecryptResponse())
+                    .thenThrow(new RuntimeException("secondary key failed to decrypt"))
+                    .thenReturn(createDecryptResponse());
+
+            decryptTestJwe(kmsRsaDecrypter);
+            decryptTestJwe(kmsRsaDecrypter);
+
+            ArgumentCaptor<DecryptRequest> decryptRequestArgumentCaptor =
+                    ArgumentCaptor.forClass(DecryptRequest.class);
+            verify(mockKmsClient, times(4)).decrypt(decryptRequestArgumentCaptor.capture());
+            // The primary alias failed once, so it is tried after the previous alias
+            assertEquals(
+                    List.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS),
+                    decryptRequestArgumentCaptor.getAllValues().stream()
+                            .map(DecryptRequest::keyId)
+                            .toList());
+            verify(mockeventProbe, never()).counterMetric(ALL_ALIASES_UNAVAILABLE);
+        }
     }
 
     @Nested
@@ -513,6 +581,198 @@ class KMSRSADecrypterTest {
         }
     }
 
+    @Nested
+    @DisplayName("Focused on concurrent decryption when a KmsAsyncClient is supplied")
+    class KMSRSADecrypterConcurrentAliasTest {
+        @Test
+        void shouldReturnFirstSuccessfulResponse() throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            stubAsyncDecrypt(
+                    Map.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            CompletableFuture.failedFuture(new RuntimeException("primary")),
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            CompletableFuture.failedFuture(new RuntimeException("secondary")),
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS,
+                            CompletableFuture.completedFuture(createDecryptResponse())));
+
+            byte[] result = decryptTestJwe(kmsRsaDecrypter);
+
+            SignedJWT signedJWT = SignedJWT.parse(new String(result, StandardCharsets.UTF_8));
+            assertEquals("ipv-core-stub", signedJWT.getJWTClaimsSet().getIssuer());
+            verify(mockKmsAsyncClient, times(3)).decrypt(any(DecryptRequest.class));
+            verifyNoInteractions(mockKmsClient);
+            verify(mockeventProbe, never()).counterMetric(ALL_ALIASES_UNAVAILABLE);
+        }
+
+        @Test
+        void shouldOnlySendNextRequestOnceHedgeDelayHasPassed()
+                throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            environmentVariables.set("KMS_DECRYPTION_HEDGE_DELAY_MILLIS", "50");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            stubAsyncDecrypt(
+                    Map.of(
+                            // Never answers, so the secondary alias is tried after the delay
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            new CompletableFuture<>(),
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            CompletableFuture.completedFuture(createDecryptResponse())));
+
+            decryptTestJwe(kmsRsaDecrypter);
+
+            ArgumentCaptor<DecryptRequest> decryptRequestArgumentCaptor =
+                    ArgumentCaptor.forClass(DecryptRequest.class);
+            verify(mockKmsAsyncClient, times(2)).decrypt(decryptRequestArgumentCaptor.capture());
+            assertEquals(
+                    List.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS),
+                    decryptRequestArgumentCaptor.getAllValues().stream()
+                            .map(DecryptRequest::keyId)
+                            .toList());
+        }
+
+        @Test
+        void shouldNotCountAFailureThatArrivesAfterTheRaceIsDecided()
+                throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            environmentVariables.set("KMS_DECRYPTION_HEDGE_DELAY_MILLIS", "0");
+            environmentVariables.set("KMS_DECRYPTION_ALIAS_FAILURE_THRESHOLD", "1");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            CompletableFuture<DecryptResponse> primaryResponse = new CompletableFuture<>();
+            Map<String, CompletableFuture<DecryptResponse>> responsesByKeyId =
+                    new HashMap<>(
+                            Map.of(
+                                    "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                                    primaryResponse,
+                                    "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                                    CompletableFuture.completedFuture(createDecryptResponse())));
+            stubAsyncDecrypt(responsesByKeyId);
+
+            decryptTestJwe(kmsRsaDecrypter);
+            primaryResponse.completeExceptionally(new RuntimeException("primary"));
+            for (String alias :
+                    List.of(
+                            SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS)) {
+                responsesByKeyId.put(
+                        "alias/" + alias,
+                        CompletableFuture.failedFuture(new RuntimeException(alias)));
+            }
+            assertThrows(JOSEException.class, () -> decryptTestJwe(kmsRsaDecrypter));
+
+            ArgumentCaptor<DecryptRequest> decryptRequestArgumentCaptor =
+                    ArgumentCaptor.forClass(DecryptRequest.class);
+            verify(mockKmsAsyncClient, times(5)).decrypt(decryptRequestArgumentCaptor.capture());
+            // The primary alias lost the first race, so it is not moved behind the previous alias
+            assertEquals(
+                    List.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS),
+                    decryptRequestArgumentCaptor.getAllValues().subList(2, 5).stream()
+                            .map(DecryptRequest::keyId)
+                            .toList());
+        }
+
+        @Test
+        void shouldThrowWhenNoRequestAnswersWithinTheTimeout() {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            environmentVariables.set("KMS_DECRYPTION_HEDGE_DELAY_MILLIS", "0");
+            environmentVariables.set("KMS_DECRYPTION_TIMEOUT_MILLIS", "50");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            when(mockKmsAsyncClient.decrypt(any(DecryptRequest.class)))
+                    .thenAnswer(invocation -> new CompletableFuture<>());
+
+            assertThrows(JOSEException.class, () -> decryptTestJwe(kmsRsaDecrypter));
+
+            verify(mockKmsAsyncClient, times(3)).decrypt(any(DecryptRequest.class));
+        }
+
+        @Test
+        void shouldIncludeLegacyKeyWhenFallbackIsEnabled() throws ParseException, JOSEException {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            environmentVariables.set(
+                    "ENV_VAR_FEATURE_FLAG_KEY_ROTATION_LEGACY_KEY_FALLBACK", "true");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            stubAsyncDecrypt(
+                    Map.of(
+                            "alias/" + SESSION_DECRYPTION_KEY_PRIMARY_ALIAS,
+                            CompletableFuture.failedFuture(new RuntimeException("primary")),
+                            "alias/" + SESSION_DECRYPTION_KEY_SECONDARY_ALIAS,
+                            CompletableFuture.failedFuture(new RuntimeException("secondary")),
+                            "alias/" + SESSION_DECRYPTION_KEY_PREVIOUS_ALIAS,
+                            CompletableFuture.failedFuture(new RuntimeException("previous")),
+                            TEST_KEY_ID,
+                            CompletableFuture.completedFuture(createDecryptResponse())));
+
+            decryptTestJwe(kmsRsaDecrypter);
+
+            verify(mockKmsAsyncClient, times(4)).decrypt(any(DecryptRequest.class));
+            verify(mockeventProbe, times(1)).counterMetric(ALL_ALIASES_UNAVAILABLE);
+        }
+
+        @Test
+        void shouldThrowWhenAllConcurrentRequestsFail() {
+            environmentVariables.set("ENV_VAR_FEATURE_FLAG_KEY_ROTATION", "true");
+            KMSRSADecrypter kmsRsaDecrypter =
+                    new KMSRSADecrypter(
+                            TEST_KEY_ID, mockKmsClient, mockKmsAsyncClient, mockeventProbe);
+            when(mockKmsAsyncClient.decrypt(any(DecryptRequest.class)))
+                    .thenReturn(CompletableFuture.failedFuture(new RuntimeException("failed")));
+
+            assertThrows(JOSEException.class, () -> decryptTestJwe(kmsRsaDecrypter));
+
+            verify(mockKmsAsyncClient, times(3)).decrypt(any(DecryptRequest.class));
+            verify(mockeventProbe, times(1)).counterMetric(ALL_ALIASES_UNAVAILABLE);
+        }
+    }
+
+    private void stubAsyncDecrypt(
+            Map<String, CompletableFuture<DecryptResponse>> responsesByKeyId) {
+        when(mockKmsAsyncClient.decrypt(any(DecryptRequest.class)))
+                .thenAnswer(
+                        invocation ->
+                                responsesByKeyId.get(
+                                        invocation.<DecryptRequest>getArgument(0).keyId()));
+    }
+
+    private byte[] decryptTestJwe(KMSRSADecrypter kmsRsaDecrypter)
+            throws ParseException, JOSEException {
+        JWEHeader header = createHeader();
+        return kmsRsaDecrypter.decrypt(
+                header,
+                Base64URL.from(
+                        "jfDZSCq6Z7Hu22uWaNEtDfFfv-RZot58oxhTAwNoGT3aMvWUiZBIzqm0b9f2xkxMBEky3oix9xC5_KRL2Xv-OO9DdTw7sfLMUs7BidEXWRIAq7PgiD1rdkQ5ElZHM1TPYoREXhJyqtXMgup8lD_B85m-xBOgaZQvuG_cxc0lNerLBgu1f23jcy0S8G3P8L-Cl056Kv6QV-WGFOQW0Vurwd_f432Ho1W1STYrSat22YNkX2_A0SJZGVcxF_wKKfNAUw4n7sVdYZOfl62x7Cz2Rt2HX36U6vLhI8ZLNGROCsNKI-LYJA2ET1_li150DMgMNlfYfwHrO3jFi_j1XcK_oA"),
+                Base64URL.from("esSJbN3jlduupMFy"),
+                Base64URL.from(
+                        "cT7gnhBT0VT7jY5gEAsafuZi-o6BP8DI-aaH97mJ4e6q0E1pAgWkWAHc-qvmRWYHLUfbMlTOpH5AlQNhQ-ZWsfm40eM0sIV3OZCk4KcAbSoz4v-9aqleBTVhr_YhZqk_lZ9I9566SzLnOuPkWQr6J5F6F19Ol7Ob0j7-a2zHgXlxQizp1hjXiWAhJ0aFFRfP4hxcohn7h5EKeMw8ZT8jv1kqc0PwRoZOt83SgBcdlLcIz9LDPIUWuXXtw9Xi5FrfAc2SXFv4sv7BEo70-ICT9sC1jTpkMsqJlofqu5R3L2Kf51HFOJe2C1SRy_MQGID9FnQGgrDburfSpcmH_DPxdLS8SJ9X7LyyrPWzrdTwgUDdUCWmsoYbvgZQC1KhRiu7GjKLDU2uQgo0NSiaNIcyS6qllDXPqJUTkz0snmMUjcIN7ZTzA29ngxJh5OhI444qChQrB-2hU769giX00UEyqb--MpTWybGReoC0nF-BzaZrrQkWMB2vFWiDg5dUUD6778b4YvmryINCP5H4NteK8JHnIsqMMbY6wxtZFqVhsvVAR6thM9JBKJrN5nSMkKlwSAEpf2vbUyec2x_AZQ6d66lrneZe3VHWmHAo42d6if2P-yaL2vLrr9g73vr7CfU9WiTYTYtFOJ0aWodFwnSeZq-Bek1RXTNsEl4G8K3ved97W1YlEW4359V6OWpSCfFouDJv-yLxaedRvzXjcBH0Ssx6D8Njs4cOduQ-PE22mUcpHd5URsUsU19F59jgXpk"),
+                Base64URL.from("I48OP5ZO-bl9nqunO4VX6w"),
+                AAD.compute(header));
+    }
+
+    private DecryptResponse createDecryptResponse() {
+        return DecryptResponse.builder()
+                .plaintext(
+                        SdkBytes.fromByteArray(
+                                Base64.getDecoder()
+                                        .decode("ngoABokVaj3BYY8FfaPef4nzV9dr+ziueibf2hofYDQ=")))
+                .build();
+    }
+
     private JWEHeader createHeader() throws ParseException {
         return createHeader(JWEAlgorithm.RSA_OAEP_256);
     }
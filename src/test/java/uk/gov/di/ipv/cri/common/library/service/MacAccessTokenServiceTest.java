@@ -0,0 +1,85 @@
+package uk.gov.di.ipv.cri.common.library.service;
+
+import org.junit.jupiter.api.Test;
+import uk.gov.di.ipv.cri.common.library.service.MacAccessTokenService.VerifiedAccessToken;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MacAccessTokenServiceTest {
+    private static final String KEY = createKey((byte) 1);
+    private static final UUID SESSION_ID = UUID.randomUUID();
+    private static final long EXPIRY = 1700000000L;
+
+    private final MacAccessTokenService macAccessTokenService =
+            new MacAccessTokenService(() -> KEY);
+
+    @Test
+    void shouldVerifyTheTokenItCreated() {
+        String token = macAccessTokenService.createToken(SESSION_ID, EXPIRY);
+
+        assertTrue(MacAccessTokenService.isMacAccessToken(token));
+        assertEquals(
+                Optional.of(new VerifiedAccessToken(SESSION_ID, EXPIRY)),
+                macAccessTokenService.verifyToken(token));
+    }
+
+    @Test
+    void shouldCreateADifferentTokenEachTime() {
+        assertNotEquals(
+                macAccessTokenService.createToken(SESSION_ID, EXPIRY),
+                macAccessTokenService.createToken(SESSION_ID, EXPIRY));
+    }
+
+    @Test
+    void shouldRejectATokenWithAChangedExpiry() {
+        String token = macAccessTokenService.createToken(SESSION_ID, EXPIRY);
+
+        String forgedToken = token.replace(String.valueOf(EXPIRY), String.valueOf(EXPIRY + 3600));
+
+        assertTrue(macAccessTokenService.verifyToken(forgedToken).isEmpty());
+    }
+
+    @Test
+    void shouldRejectATokenCreatedWithAnotherKey() {
+        String token =
+                new MacAccessTokenService(() -> createKey((byte) 2))
+                        .createToken(SESSION_ID, EXPIRY);
+
+        assertTrue(macAccessTokenService.verifyToken(token).isEmpty());
+    }
+
+    @Test
+    void shouldRejectMalformedTokens() {
+        assertFalse(MacAccessTokenService.isMacAccessToken("plain-bearer-token"));
+        assertFalse(MacAccessTokenService.isMacAccessToken("a.b.c"));
+        assertFalse(MacAccessTokenService.isMacAccessToken("a..c.d"));
+        assertFalse(MacAccessTokenService.isMacAccessToken("a.b.c.d.e"));
+        assertTrue(macAccessTokenService.verifyToken("plain-bearer-token").isEmpty());
+        assertTrue(macAccessTokenService.verifyToken("a.b.c.not base64!").isEmpty());
+        assertTrue(macAccessTokenService.verifyToken("a.b.c.AAAA").isEmpty());
+    }
+
+    @Test
+    void shouldFailClearlyWhenTheSecretHasNoValue() {
+        MacAccessTokenService missingKeyService = new MacAccessTokenService(() -> null);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> missingKeyService.createToken(SESSION_ID, EXPIRY));
+    }
+
+    private static String createKey(byte value) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, value);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
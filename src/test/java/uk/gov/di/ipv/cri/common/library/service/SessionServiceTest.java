@@ -27,12 +27,14 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -321,6 +323,194 @@ class SessionServiceTest {
         }
     }
 
+    @Test
+    void shouldCreateCompoundAuthorizationCodeWhenEnabled() {
+        SessionService compoundCodeSessionService =
+                new SessionService(
+                        mockDataStore,
+                        mockConfigurationService,
+                        Clock.fixed(fixedInstant, ZoneId.systemDefault()),
+                        true);
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+
+        compoundCodeSessionService.createAuthorizationCode(item);
+
+        assertThat(item.getAuthorizationCode(), startsWith(item.getSessionId() + "."));
+        verify(mockDataStore).update(item);
+    }
+
+    @Test
+    void shouldGetSessionItemByCompoundAuthorizationCodeWithoutTheIndex()
+            throws AuthorizationCodeExpiredException,
+                    SessionExpiredException,
+                    SessionNotFoundException {
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+        String authCodeValue = item.getSessionId() + "." + UUID.randomUUID();
+        item.setAuthorizationCode(authCodeValue);
+        item.setExpiryDate(fixedInstant.plus(1, ChronoUnit.DAYS).getEpochSecond());
+        item.setAuthorizationCodeExpiryDate(fixedInstant.plus(1, ChronoUnit.DAYS).getEpochSecond());
+        when(mockDataStore.getItemWithConsistentRead(item.getSessionId().toString()))
+                .thenReturn(item);
+
+        SessionItem sessionItem = sessionService.getSessionByAuthorisationCode(authCodeValue);
+
+        assertThat(sessionItem, equalTo(item));
+        verify(mockDataStore, never()).getItemByIndex(any(), any());
+        verify(mockDataStore, never()).getItem(any());
+    }
+
+    @Test
+    void shouldThrowSessionNotFoundWhenCompoundAuthorizationCodeDoesNotMatch() {
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+        item.setAuthorizationCode(item.getSessionId() + "." + UUID.randomUUID());
+        when(mockDataStore.getItemWithConsistentRead(item.getSessionId().toString()))
+                .thenReturn(item);
+
+        String otherAuthCodeValue = item.getSessionId() + "." + UUID.randomUUID();
+        assertThrows(
+                SessionNotFoundException.class,
+                () -> sessionService.getSessionByAuthorisationCode(otherAuthCodeValue));
+    }
+
+    @Test
+    void shouldGetSessionItemByMacAccessTokenWithoutTheIndex()
+            throws AccessTokenExpiredException, SessionExpiredException, SessionNotFoundException {
+        String hmacKey = Base64.getEncoder().encodeToString(new byte[32]);
+        when(mockConfigurationService.getSecretValue(MacAccessTokenService.HMAC_KEY_SECRET_NAME))
+                .thenReturn(hmacKey);
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+        long expiry = fixedInstant.plus(1, ChronoUnit.HOURS).getEpochSecond();
+        AccessToken accessToken =
+                new BearerAccessToken(
+                        new MacAccessTokenService(() -> hmacKey)
+                                .createToken(item.getSessionId(), expiry));
+        item.setAccessToken(accessToken.toAuthorizationHeader());
+        item.setAccessTokenExpiryDate(expiry);
+        item.setExpiryDate(expiry);
+        when(mockDataStore.getItemWithConsistentRead(item.getSessionId().toString()))
+                .thenReturn(item);
+
+        SessionItem sessionItem =
+                createMacAccessTokenSessionService().getSessionByAccessToken(accessToken);
+
+        assertThat(sessionItem, equalTo(item));
+        verify(mockDataStore, never()).getItemByIndex(any(), any());
+        verify(mockDataStore, never()).getItem(any());
+    }
+
+    @Test
+    void shouldRejectAnExpiredMacAccessTokenWithoutReadingTheSession() {
+        String hmacKey = Base64.getEncoder().encodeToString(new byte[32]);
+        when(mockConfigurationService.getSecretValue(MacAccessTokenService.HMAC_KEY_SECRET_NAME))
+                .thenReturn(hmacKey);
+        long expiry = fixedInstant.minus(1, ChronoUnit.MINUTES).getEpochSecond();
+        AccessToken accessToken =
+                new BearerAccessToken(
+                        new MacAccessTokenService(() -> hmacKey)
+                                .createToken(UUID.randomUUID(), expiry));
+
+        SessionService macAccessTokenSessionService = createMacAccessTokenSessionService();
+
+        assertThrows(
+                AccessTokenExpiredException.class,
+                () -> macAccessTokenSessionService.getSessionByAccessToken(accessToken));
+        verify(mockDataStore, never()).getItemWithConsistentRead(any());
+    }
+
+    @Test
+    void shouldLookUpADottedAccessTokenThroughTheIndexWhenMacAccessTokensAreOff()
+            throws AccessTokenExpiredException, SessionExpiredException, SessionNotFoundException {
+        AccessToken accessToken =
+                new BearerAccessToken(UUID.randomUUID() + "." + Long.MAX_VALUE + ".bm9uY2U.bWFj");
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+        item.setAccessToken(accessToken.toAuthorizationHeader());
+        item.setExpiryDate(fixedInstant.plus(1, ChronoUnit.DAYS).getEpochSecond());
+        item.setAccessTokenExpiryDate(fixedInstant.plus(1, ChronoUnit.DAYS).getEpochSecond());
+        when(mockDataStore.getItemByIndex(
+                        SessionItem.ACCESS_TOKEN_INDEX, accessToken.toAuthorizationHeader()))
+                .thenReturn(List.of(item));
+        when(mockDataStore.getItem(item.getSessionId().toString())).thenReturn(item);
+
+        assertThat(sessionService.getSessionByAccessToken(accessToken), equalTo(item));
+        verify(mockConfigurationService, never()).getSecretValue(any());
+        verify(mockDataStore, never()).getItemWithConsistentRead(any());
+    }
+
+    @Test
+    void shouldServeRepeatReadsFromTheRequestScope()
+            throws SessionExpiredException, SessionNotFoundException {
+        SessionItem item = new SessionItem();
+        item.setExpiryDate(fixedInstant.plus(1, ChronoUnit.DAYS).getEpochSecond());
+        when(mockDataStore.getItem(SESSION_ID)).thenReturn(item);
+
+        try (SessionService.RequestScope requestScope = sessionService.openRequestScope()) {
+            assertThat(sessionService.validateSessionId(SESSION_ID), equalTo(item));
+            assertThat(
+                    sessionService.getSession(SESSION_ID).getExpiryDate(),
+                    equalTo(item.getExpiryDate()));
+        }
+        sessionService.getSession(SESSION_ID);
+
+        verify(mockDataStore, times(2)).getItem(SESSION_ID);
+    }
+
+    @Test
+    void shouldNotReturnAnUnsavedChangeWithinTheRequestScope() {
+        SessionItem item = new SessionItem();
+        item.setAttemptCount(0);
+        when(mockDataStore.getItem(SESSION_ID)).thenReturn(item);
+
+        try (SessionService.RequestScope requestScope = sessionService.openRequestScope()) {
+            sessionService.getSession(SESSION_ID).setAttemptCount(1);
+            SessionItem changedSession = sessionService.getSession(SESSION_ID);
+            changedSession.setAttemptCount(2);
+
+            assertThat(sessionService.getSession(SESSION_ID).getAttemptCount(), equalTo(0));
+        }
+
+        verify(mockDataStore, times(1)).getItem(SESSION_ID);
+    }
+
+    @Test
+    void shouldClearTheRequestScopeWhenItIsClosedByAnException() {
+        when(mockDataStore.getItem(SESSION_ID)).thenReturn(new SessionItem());
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> {
+                    try (SessionService.RequestScope requestScope =
+                            sessionService.openRequestScope()) {
+                        sessionService.getSession(SESSION_ID);
+                        throw new IllegalStateException("handler failed");
+                    }
+                });
+        sessionService.getSession(SESSION_ID);
+
+        verify(mockDataStore, times(2)).getItem(SESSION_ID);
+    }
+
+    @Test
+    void shouldReturnTheUpdatedSessionWithinTheRequestScope() {
+        SessionItem item = new SessionItem();
+        item.setSessionId(UUID.randomUUID());
+
+        try (SessionService.RequestScope requestScope = sessionService.openRequestScope()) {
+            sessionService.updateSession(item);
+
+            assertThat(
+                    sessionService.getSession(item.getSessionId().toString()).getSessionId(),
+                    equalTo(item.getSessionId()));
+        }
+
+        verify(mockDataStore).update(item);
+        verify(mockDataStore, never()).getItem(item.getSessionId().toString());
+    }
+
     private void verifyLoggingUtilsAppendKeys(MockedStatic<MDC> mdcMockedStatic) {
         mdcMockedStatic.verify(
                 () -> MDC.put("govuk_signin_journey_id", "a client session id"), times(1));
@@ -342,4 +532,13 @@ class SessionServiceTest {
         evidenceRequest.setIdentityFraudScore(6);
         return evidenceRequest;
     }
+
+    private SessionService createMacAccessTokenSessionService() {
+        return new SessionService(
+                mockDataStore,
+                mockConfigurationService,
+                Clock.fixed(fixedInstant, ZoneId.systemDefault()),
+                false,
+                new MacAccessTokenService(mockConfigurationService));
+    }
 }
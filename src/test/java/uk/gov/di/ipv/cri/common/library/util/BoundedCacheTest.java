@@ -0,0 +1,53 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedCacheTest {
+
+    @Test
+    void shouldReturnCachedValue() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("a", "value-a");
+
+        assertEquals("value-a", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("a", "value-a");
+        cache.put("b", "value-b");
+
+        // Touch "a" so that "b" becomes the eldest entry
+        cache.get("a");
+        cache.put("c", "value-c");
+
+        assertEquals(2, cache.size());
+        assertEquals("value-a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("value-c", cache.get("c"));
+    }
+
+    @Test
+    void shouldRemoveAndClearEntries() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2);
+        cache.put("a", "value-a");
+        cache.put("b", "value-b");
+
+        assertEquals("value-a", cache.remove("a"));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldRejectNonPositiveMaxSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<String, String>(0));
+    }
+}
@@ -8,10 +8,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.services.acm.AcmClient;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
 import software.amazon.awssdk.services.kms.KmsClient;
 import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.lambda.powertools.parameters.secrets.SecretsProvider;
@@ -135,6 +138,30 @@ class ClientProviderFactoryTest {
         assertEquals(kmsClient1, kmsClient2);
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "false, false", // AutoTel
+        "true, false", // ManualTel, No Tracing Providers
+        "true, true", // ManualTel, Tracing Providers
+    })
+    void shouldReturnKmsAsyncClient(
+            boolean usingNonAutomaticOpenTelemetry,
+            boolean avoidExecutionInterceptorsOnClientsUsedByPowerTools) {
+
+        ClientProviderFactory clientProviderFactory =
+                new ClientProviderFactory(
+                        usingNonAutomaticOpenTelemetry,
+                        avoidExecutionInterceptorsOnClientsUsedByPowerTools);
+
+        KmsAsyncClient kmsAsyncClient1 = clientProviderFactory.getKmsAsyncClient();
+        assertNotNull(kmsAsyncClient1);
+
+        KmsAsyncClient kmsAsyncClient2 = clientProviderFactory.getKmsAsyncClient();
+        assertNotNull(kmsAsyncClient2);
+
+        assertEquals(kmsAsyncClient1, kmsAsyncClient2);
+    }
+
     @ParameterizedTest
     @CsvSource({
         "false, false", // AutoTel
@@ -161,6 +188,31 @@ class ClientProviderFactoryTest {
         assertEquals(sqsClient1.hashCode(), sqsClient2.hashCode());
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "false, false", // AutoTel
+        "true, false", // ManualTel, No Tracing Providers
+        "true, true", // ManualTel, Tracing Providers
+    })
+    void shouldReturnSqsAsyncClient(
+            boolean usingNonAutomaticOpenTelemetry,
+            boolean avoidExecutionInterceptorsOnClientsUsedByPowerTools) {
+
+        ClientProviderFactory clientProviderFactory =
+                new ClientProviderFactory(
+                        usingNonAutomaticOpenTelemetry,
+                        avoidExecutionInterceptorsOnClientsUsedByPowerTools);
+
+        SqsAsyncClient sqsAsyncClient1 = clientProviderFactory.getSqsAsyncClient();
+        assertNotNull(sqsAsyncClient1);
+
+        SqsAsyncClient sqsAsyncClient2 = clientProviderFactory.getSqsAsyncClient();
+        assertNotNull(sqsAsyncClient2);
+
+        // Wrapped in a proxy when OpenTelemetry is used, as with the sync client
+        assertEquals(sqsAsyncClient1.hashCode(), sqsAsyncClient2.hashCode());
+    }
+
     @ParameterizedTest
     @CsvSource({
         "false, false", // AutoTel
@@ -187,6 +239,32 @@ class ClientProviderFactoryTest {
         assertEquals(dynamoDbEnhancedClient1, dynamoDbEnhancedClient2);
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "false, false", // AutoTel
+        "true, false", // ManualTel, No Tracing Providers
+        "true, true", // ManualTel, Tracing Providers
+    })
+    void shouldReturnDynamoDbEnhancedAsyncClient(
+            boolean usingNonAutomaticOpenTelemetry,
+            boolean avoidExecutionInterceptorsOnClientsUsedByPowerTools) {
+
+        ClientProviderFactory clientProviderFactory =
+                new ClientProviderFactory(
+                        usingNonAutomaticOpenTelemetry,
+                        avoidExecutionInterceptorsOnClientsUsedByPowerTools);
+
+        DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient1 =
+                clientProviderFactory.getDynamoDbEnhancedAsyncClient();
+        assertNotNull(dynamoDbEnhancedAsyncClient1);
+
+        DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient2 =
+                clientProviderFactory.getDynamoDbEnhancedAsyncClient();
+        assertNotNull(dynamoDbEnhancedAsyncClient2);
+
+        assertEquals(dynamoDbEnhancedAsyncClient1, dynamoDbEnhancedAsyncClient2);
+    }
+
     @ParameterizedTest
     @CsvSource({
         "false, false", // AutoTel
@@ -1,6 +1,10 @@
 package uk.gov.di.ipv.cri.common.library.util;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -8,16 +12,25 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.JWKS;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.Key;
+import uk.gov.di.ipv.cri.common.library.exception.JWKSRequestException;
 import uk.org.webcompere.systemstubs.environment.EnvironmentVariables;
 import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -51,7 +64,7 @@ class JwkKeyCacheTest {
 
         jwks.setKeys(List.of(key));
 
-        when(mockJwkRequest.callJWKSEndpoint(anyString())).thenReturn(jwks);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
 
         JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
         Optional<String> jwk = jwkKeyCache.getBase64JwkForKid("https://example.com", kid);
@@ -77,21 +90,242 @@ class JwkKeyCacheTest {
 
         jwks.setKeys(List.of(key));
 
-        when(mockJwkRequest.callJWKSEndpoint(anyString())).thenReturn(jwks);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
 
         JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
 
         Optional<String> jwka = jwkKeyCache.getBase64JwkForKid("https://example.com", kid);
         assertTrue(jwka.isPresent());
-        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
 
         Optional<String> jwkb = jwkKeyCache.getBase64JwkForKid("https://example.com", kid);
         assertTrue(jwkb.isPresent());
-        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
 
         Optional<String> jwkc = jwkKeyCache.getBase64JwkForKid("https://localhost.com", kid);
         assertTrue(jwkc.isPresent());
-        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString());
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldCoalesceConcurrentRefreshesForSameEndpoint() throws Exception {
+        String kid = "dummyKid";
+
+        JWKS jwks = new JWKS();
+        jwks.setMaxAgeFromCacheControlHeader(300);
+
+        Key key = new Key();
+        key.setUse("sig");
+        key.setKid(kid);
+
+        jwks.setKeys(List.of(key));
+
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any()))
+                .thenAnswer(
+                        invocation -> {
+                            fetchStarted.countDown();
+                            releaseFetch.await(5, TimeUnit.SECONDS);
+                            return jwks;
+                        });
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            results.add(
+                    executor.submit(
+                            () -> jwkKeyCache.getBase64JwkForKid("https://example.com", kid)));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 3; i++) {
+                results.add(
+                        executor.submit(
+                                () -> jwkKeyCache.getBase64JwkForKid("https://example.com", kid)));
+            }
+            releaseFetch.countDown();
+
+            for (Future<Optional<String>> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).isPresent());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldServeStaleJwkWhileRefreshingInBackground() throws Exception {
+        environmentVariables.set("JWKS_CACHE_STALE_WHILE_REVALIDATE_SECONDS", 60);
+        String kid = "dummyKid";
+        JWKS jwks = createJwks(kid, 0);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        List<Runnable> scheduledRefreshes = new ArrayList<>();
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest, scheduledRefreshes::add);
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+
+        jwks.setLastUpdated(System.currentTimeMillis() - 10_000);
+
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
+        assertEquals(1, scheduledRefreshes.size());
+
+        scheduledRefreshes.get(0).run();
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldRefreshSynchronouslyOnceGraceWindowHasPassed() throws Exception {
+        environmentVariables.set("JWKS_CACHE_STALE_WHILE_REVALIDATE_SECONDS", 60);
+        String kid = "dummyKid";
+        JWKS jwks = createJwks(kid, 0);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        List<Runnable> scheduledRefreshes = new ArrayList<>();
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest, scheduledRefreshes::add);
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+
+        jwks.setLastUpdated(System.currentTimeMillis() - 120_000);
+
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+        assertTrue(scheduledRefreshes.isEmpty());
+    }
+
+    @Test
+    void shouldRefreshAheadOfExpiryInBackground() throws Exception {
+        environmentVariables.set("JWKS_CACHE_REFRESH_AHEAD_SECONDS", 60);
+        String kid = "dummyKid";
+        JWKS jwks = createJwks(kid, 300);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        List<Runnable> scheduledRefreshes = new ArrayList<>();
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest, scheduledRefreshes::add);
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        assertTrue(scheduledRefreshes.isEmpty());
+
+        // 50 seconds until expiry, inside the refresh-ahead window
+        jwks.setLastUpdated(System.currentTimeMillis() - 250_000);
+
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        assertEquals(1, scheduledRefreshes.size());
+
+        scheduledRefreshes.get(0).run();
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldPassCachedJwksWhenRefreshing() throws Exception {
+        String kid = "dummyKid";
+        JWKS jwks = createJwks(kid, 0);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        verify(mockJwkRequest).callJWKSEndpoint("https://example.com", null);
+
+        jwks.setLastUpdated(System.currentTimeMillis() - 10_000);
+
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
+        verify(mockJwkRequest).callJWKSEndpoint("https://example.com", jwks);
+    }
+
+    @Test
+    void shouldBackOffAfterFailedFetch() throws Exception {
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any()))
+                .thenThrow(new JWKSRequestException("JWK endpoint returned status code 503"));
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "dummyKid").isEmpty());
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "dummyKid").isEmpty());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldRefreshWhenKidIsNotInCachedJwks() throws Exception {
+        JWKS jwks = createJwks("dummyKid", 300);
+        JWKS rotatedJwks = createJwks("rotatedKid", 300);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any()))
+                .thenReturn(jwks)
+                .thenReturn(rotatedJwks);
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "dummyKid").isPresent());
+
+        jwks.setLastUpdated(System.currentTimeMillis() - 60_000);
+
+        assertTrue(
+                jwkKeyCache.getBase64JwkForKid("https://example.com", "rotatedKid").isPresent());
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldNotRefreshAgainForRecentlyUnknownKid() throws Exception {
+        JWKS jwks = createJwks("dummyKid", 300);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+        // Just fetched, so an unknown kid does not force another refresh
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "unknownKid").isEmpty());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
+
+        jwks.setLastUpdated(System.currentTimeMillis() - 60_000);
+
+        // Remembered as unknown, so the older key set is not refreshed either
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "unknownKid").isEmpty());
+        verify(mockJwkRequest, times(1)).callJWKSEndpoint(anyString(), any());
+
+        // A different unknown kid forces a single refresh
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "otherKid").isEmpty());
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", "otherKid").isEmpty());
+        verify(mockJwkRequest, times(2)).callJWKSEndpoint(anyString(), any());
+    }
+
+    @Test
+    void shouldReturnParsedSigningJwk() throws Exception {
+        ECKey ecKey = new ECKeyGenerator(Curve.P_256).keyID("ecKid").generate();
+
+        Key key = new Key();
+        key.setKty("EC");
+        key.setUse("sig");
+        key.setCrv("P-256");
+        key.setAlg("ES256");
+        key.setX(ecKey.getX().toString());
+        key.setY(ecKey.getY().toString());
+        key.setKid("ecKid");
+
+        JWKS jwks = new JWKS();
+        jwks.setMaxAgeFromCacheControlHeader(300);
+        jwks.setKeys(List.of(key));
+
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+        Optional<JWK> jwk = jwkKeyCache.getSigningJwkForKid("https://example.com", "ecKid");
+
+        assertTrue(jwk.isPresent());
+        assertEquals(ecKey.getX(), jwk.get().toECKey().getX());
+        assertEquals(ecKey.getY(), jwk.get().toECKey().getY());
+        // Parsed once at fetch time and shared between lookups
+        assertSame(
+                jwk.get(), jwkKeyCache.getSigningJwkForKid("https://example.com", "ecKid").get());
+    }
+
+    @Test
+    void shouldReturnEmptySigningJwkWhenKeyCannotBeParsed() throws Exception {
+        String kid = "dummyKid";
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(createJwks(kid, 300));
+
+        JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
+
+        assertTrue(jwkKeyCache.getSigningJwkForKid("https://example.com", kid).isEmpty());
+        assertTrue(jwkKeyCache.getBase64JwkForKid("https://example.com", kid).isPresent());
     }
 
     @Test
@@ -101,7 +335,7 @@ class JwkKeyCacheTest {
         JWKS jwks = new JWKS();
         jwks.setMaxAgeFromCacheControlHeader(300);
 
-        when(mockJwkRequest.callJWKSEndpoint(anyString())).thenReturn(jwks);
+        when(mockJwkRequest.callJWKSEndpoint(anyString(), any())).thenReturn(jwks);
 
         JwkKeyCache jwkKeyCache = new JwkKeyCache(mockJwkRequest);
         Optional<String> jwk = jwkKeyCache.getBase64JwkForKid("https://example.com", kid);
@@ -124,4 +358,16 @@ class JwkKeyCacheTest {
     void shouldReturnEmptyWhenJwksEndpointNull() {
         assertTrue(new JwkKeyCache(mockJwkRequest).getBase64JwkForKid(null, "dummy").isEmpty());
     }
+
+    private JWKS createJwks(String kid, int maxAge) {
+        JWKS jwks = new JWKS();
+        jwks.setMaxAgeFromCacheControlHeader(maxAge);
+
+        Key key = new Key();
+        key.setUse("sig");
+        key.setKid(kid);
+
+        jwks.setKeys(List.of(key));
+        return jwks;
+    }
 }
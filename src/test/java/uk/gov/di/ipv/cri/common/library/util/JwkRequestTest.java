@@ -3,6 +3,7 @@ package uk.gov.di.ipv.cri.common.library.util;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.di.ipv.cri.common.library.domain.jwks.JWKS;
@@ -12,14 +13,21 @@ import uk.gov.di.ipv.cri.common.library.exception.JWKSRequestException;
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -157,4 +165,164 @@ class JwkRequestTest {
                 JWKSRequestException.class,
                 () -> request.callJWKSEndpoint("https://example.com/.well-known/jwks.json"));
     }
+
+    @Test
+    void shouldRetryWithNewHttpClientWhenGoAwayReceived() throws Exception {
+        when(mockHttpClient.version()).thenReturn(HttpClient.Version.HTTP_2);
+        when(mockHttpClient.send(any(), any()))
+                .thenThrow(new IOException("/127.0.0.1:443: GOAWAY received"))
+                .thenReturn(mockHttpResponse);
+        when(mockHttpResponse.body()).thenReturn(MOCK_API_RESPONSE);
+        when(mockHttpResponse.statusCode()).thenReturn(200);
+        when(mockHttpResponse.headers()).thenReturn(mockHttpHeaders);
+
+        AtomicInteger clientsCreated = new AtomicInteger();
+        JwkRequest request =
+                new JwkRequest(
+                        () -> {
+                            clientsCreated.incrementAndGet();
+                            return mockHttpClient;
+                        },
+                        objectMapper);
+        JWKS jwks = request.callJWKSEndpoint("https://example.com/.well-known/jwks.json");
+
+        assertEquals(2, jwks.getKeys().size());
+        assertEquals(2, clientsCreated.get());
+        verify(mockHttpClient, times(2)).send(any(), any());
+    }
+
+    @Test
+    void shouldReuseHttpClientAcrossRequests() throws Exception {
+        when(mockHttpClient.send(any(), any())).thenReturn(mockHttpResponse);
+        when(mockHttpResponse.body()).thenReturn(MOCK_API_RESPONSE);
+        when(mockHttpResponse.statusCode()).thenReturn(200);
+        when(mockHttpResponse.headers()).thenReturn(mockHttpHeaders);
+
+        AtomicInteger clientsCreated = new AtomicInteger();
+        JwkRequest request =
+                new JwkRequest(
+                        () -> {
+                            clientsCreated.incrementAndGet();
+                            return mockHttpClient;
+                        },
+                        objectMapper);
+        request.callJWKSEndpoint("https://example.com/.well-known/jwks.json");
+        request.callJWKSEndpoint("https://example.com/.well-known/jwks.json");
+
+        assertEquals(1, clientsCreated.get());
+        verify(mockHttpClient, times(2)).send(any(), any());
+    }
+
+    @Test
+    void shouldNotRetryWhenOtherIOExceptionThrown() throws Exception {
+        when(mockHttpClient.send(any(), any())).thenThrow(new IOException("Connection reset"));
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+
+        assertThrows(
+                JWKSRequestException.class,
+                () -> request.callJWKSEndpoint("https://example.com/.well-known/jwks.json"));
+        verify(mockHttpClient, times(1)).send(any(), any());
+    }
+
+    @Test
+    void shouldNotRetryGoAwayOnAnHttp11Client() throws Exception {
+        when(mockHttpClient.version()).thenReturn(HttpClient.Version.HTTP_1_1);
+        when(mockHttpClient.send(any(), any()))
+                .thenThrow(new IOException("/127.0.0.1:443: GOAWAY received"));
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+
+        assertThrows(
+                JWKSRequestException.class,
+                () -> request.callJWKSEndpoint("https://example.com/.well-known/jwks.json"));
+        verify(mockHttpClient, times(1)).send(any(), any());
+    }
+
+    @Test
+    void shouldNotRetryWhenGoAwayIsMissingFromTheMessage() throws Exception {
+        when(mockHttpClient.version()).thenReturn(HttpClient.Version.HTTP_2);
+        when(mockHttpClient.send(any(), any())).thenThrow(new IOException());
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+
+        assertThrows(
+                JWKSRequestException.class,
+                () -> request.callJWKSEndpoint("https://example.com/.well-known/jwks.json"));
+        verify(mockHttpClient, times(1)).send(any(), any());
+    }
+
+    @Test
+    void shouldCreateAnHttpClientWhenGivenNull() {
+        JwkRequest request = new JwkRequest(null, objectMapper);
+
+        // Nothing listens on port 1, so the request fails to connect rather than with an NPE
+        JWKSRequestException exception =
+                assertThrows(
+                        JWKSRequestException.class,
+                        () -> request.callJWKSEndpoint("http://127.0.0.1:1/.well-known/jwks.json"));
+        assertInstanceOf(IOException.class, exception.getCause());
+    }
+
+    @Test
+    void shouldStoreValidatorsFromResponse() throws Exception {
+        when(mockHttpClient.send(any(), any())).thenReturn(mockHttpResponse);
+        when(mockHttpResponse.body()).thenReturn(MOCK_API_RESPONSE);
+        when(mockHttpResponse.statusCode()).thenReturn(200);
+        when(mockHttpResponse.headers()).thenReturn(mockHttpHeaders);
+        when(mockHttpHeaders.firstValue("ETag")).thenReturn(Optional.of("\"v1\""));
+        when(mockHttpHeaders.firstValue("Last-Modified"))
+                .thenReturn(Optional.of("Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+        JWKS jwks = request.callJWKSEndpoint("https://example.com/.well-known/jwks.json");
+
+        assertEquals("\"v1\"", jwks.getEtag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", jwks.getLastModified());
+    }
+
+    @Test
+    void shouldReturnCachedKeysWhenNotModified() throws Exception {
+        JWKS cachedJwks = new JWKS();
+        cachedJwks.setKeys(List.of(new Key()));
+        cachedJwks.setEtag("\"v1\"");
+        cachedJwks.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+        cachedJwks.setMaxAgeFromCacheControlHeader(60);
+
+        when(mockHttpClient.send(any(), any())).thenReturn(mockHttpResponse);
+        when(mockHttpResponse.statusCode()).thenReturn(304);
+        when(mockHttpResponse.headers()).thenReturn(mockHttpHeaders);
+        when(mockHttpHeaders.firstValue("Cache-Control")).thenReturn(Optional.of("max-age=300"));
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+        JWKS jwks =
+                request.callJWKSEndpoint("https://example.com/.well-known/jwks.json", cachedJwks);
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient).send(requestCaptor.capture(), any());
+        assertEquals(
+                Optional.of("\"v1\""),
+                requestCaptor.getValue().headers().firstValue("If-None-Match"));
+        assertEquals(
+                Optional.of("Wed, 21 Oct 2015 07:28:00 GMT"),
+                requestCaptor.getValue().headers().firstValue("If-Modified-Since"));
+        verify(mockHttpResponse, never()).body();
+
+        assertNotSame(cachedJwks, jwks);
+        assertSame(cachedJwks.getKeys(), jwks.getKeys());
+        assertEquals("\"v1\"", jwks.getEtag());
+        assertEquals(300, jwks.getMaxAgeFromCacheControlHeader());
+    }
+
+    @Test
+    void shouldThrowWhenNotModifiedWithoutCachedJwks() throws Exception {
+        when(mockHttpClient.send(any(), any())).thenReturn(mockHttpResponse);
+        when(mockHttpResponse.statusCode()).thenReturn(304);
+
+        JwkRequest request = new JwkRequest(mockHttpClient, objectMapper);
+
+        assertThrows(
+                JWKSRequestException.class,
+                () -> request.callJWKSEndpoint("https://example.com/.well-known/jwks.json"));
+    }
 }
@@ -0,0 +1,102 @@
+package uk.gov.di.ipv.cri.common.library.util;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.util.Base64URL;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.kms.KmsAsyncClient;
+import software.amazon.awssdk.services.kms.model.KmsException;
+import software.amazon.awssdk.services.kms.model.MessageType;
+import software.amazon.awssdk.services.kms.model.SignRequest;
+import software.amazon.awssdk.services.kms.model.SignResponse;
+import software.amazon.awssdk.services.kms.model.SigningAlgorithmSpec;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static com.nimbusds.jose.JWSAlgorithm.ES256;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KMSAsyncSignerTest {
+    private final String kid = UUID.randomUUID().toString();
+    private final JWSHeader jwsHeader = new JWSHeader.Builder(ES256).build();
+    @Mock private KmsAsyncClient mockKmsAsyncClient;
+    private KMSAsyncSigner kmsAsyncSigner;
+
+    @BeforeEach
+    void setUp() {
+        kmsAsyncSigner = new KMSAsyncSigner(kid, mockKmsAsyncClient);
+    }
+
+    @Test
+    void shouldSignDigestOfSigningInput() throws Exception {
+        byte[] signingInput = "test payload".getBytes();
+        ArgumentCaptor<SignRequest> signRequestArgumentCaptor =
+                ArgumentCaptor.forClass(SignRequest.class);
+        when(mockKmsAsyncClient.sign(signRequestArgumentCaptor.capture()))
+                .thenReturn(
+                        CompletableFuture.completedFuture(
+                                SignResponse.builder()
+                                        .signature(
+                                                SdkBytes.fromByteArray(
+                                                        getDERSignatureBytes(signingInput)))
+                                        .build()));
+
+        Base64URL signature = kmsAsyncSigner.signAsync(jwsHeader, signingInput).join();
+
+        SignRequest capturedSignRequest = signRequestArgumentCaptor.getValue();
+        assertThat(signature.decode().length, is(64));
+        assertThat(capturedSignRequest.keyId(), equalTo(kid));
+        assertThat(
+                capturedSignRequest.messageTypeAsString(), equalTo(MessageType.DIGEST.toString()));
+        assertThat(
+                capturedSignRequest.signingAlgorithmAsString(),
+                equalTo(SigningAlgorithmSpec.ECDSA_SHA_256.toString()));
+        assertArrayEquals(
+                MessageDigest.getInstance("SHA-256").digest(signingInput),
+                capturedSignRequest.message().asByteArray());
+    }
+
+    @Test
+    void shouldThrowJOSEExceptionWhenKmsFailsToSign() {
+        when(mockKmsAsyncClient.sign(any(SignRequest.class)))
+                .thenReturn(
+                        CompletableFuture.failedFuture(
+                                KmsException.builder().message("KMS unavailable").build()));
+
+        JOSEException exception =
+                assertThrows(
+                        JOSEException.class,
+                        () -> kmsAsyncSigner.sign(jwsHeader, "test payload".getBytes()));
+
+        assertThat(exception.getMessage(), containsString("KMS unavailable"));
+    }
+
+    private byte[] getDERSignatureBytes(byte[] payload) throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(256);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        Signature signature = Signature.getInstance("SHA256WithECDSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(payload);
+        return signature.sign();
+    }
+}
@@ -1,9 +1,13 @@
 package uk.gov.di.ipv.cri.common.library.util;
 
 import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.crypto.ECDSASigner;
 import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jca.JCAContext;
 import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import org.junit.jupiter.api.Test;
@@ -17,10 +21,23 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.text.ParseException;
 import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class SignedJWTFactoryTest {
@@ -61,6 +78,36 @@ class SignedJWTFactoryTest {
         assertThat(signedJWT.verify(new ECDSAVerifier(ECKey.parse(EC_PUBLIC_JWK_1))), is(true));
     }
 
+    @Test
+    void shouldSignTheClaimsStringExactlyAsGiven()
+            throws JOSEException,
+                    InvalidKeySpecException,
+                    NoSuchAlgorithmException,
+                    ParseException {
+        signedJwtFactory = new SignedJWTFactory(new ECDSASigner(getPrivateKey()));
+        // Whitespace and key order that JWTClaimsSet would not reproduce when re-serialising
+        String claimsSet = "{\n  \"sub\": \"test-subject\",\n  \"iss\": \"issuer\"\n}";
+
+        SignedJWT signedJWT = signedJwtFactory.createSignedJwt(claimsSet);
+
+        assertThat(signedJWT.verify(new ECDSAVerifier(ECKey.parse(EC_PUBLIC_JWK_1))), is(true));
+        assertEquals(claimsSet, signedJWT.getPayload().toString());
+        assertEquals("test-subject", signedJWT.getJWTClaimsSet().getSubject());
+    }
+
+    @Test
+    void shouldRejectAClaimsStringThatIsNotAValidClaimsSet()
+            throws JOSEException, InvalidKeySpecException, NoSuchAlgorithmException {
+        signedJwtFactory = new SignedJWTFactory(new ECDSASigner(getPrivateKey()));
+
+        assertThrows(ParseException.class, () -> signedJwtFactory.createSignedJwt("not json"));
+        assertThrows(ParseException.class, () -> signedJwtFactory.createSignedJwt("[]"));
+        assertThrows(
+                ParseException.class,
+                () -> signedJwtFactory.createSignedJwt("{\"exp\":\"tomorrow\"}"));
+        assertThrows(ParseException.class, () -> signedJwtFactory.createSignedJwt("{\"iss\":1}"));
+    }
+
     @Test
     void shouldCreateASignedJwtSuccessfullyFromJWTClaimsSetWhenKeyIDInHeader()
             throws JOSEException,
@@ -113,6 +160,87 @@ class SignedJWTFactoryTest {
         assertEquals(EXPECTED_KID, signedJWT.getHeader().getKeyID());
     }
 
+    @Test
+    void shouldReuseTheHeaderForTheSameIssuerAndKeyId()
+            throws JOSEException, InvalidKeySpecException, NoSuchAlgorithmException {
+        JWTClaimsSet testClaimsSet = new JWTClaimsSet.Builder().build();
+        signedJwtFactory = new SignedJWTFactory(new ECDSASigner(getPrivateKey()));
+
+        SignedJWT firstSignedJWT =
+                signedJwtFactory.createSignedJwt(testClaimsSet, "issuer", "keyId");
+        SignedJWT secondSignedJWT =
+                signedJwtFactory.createSignedJwt(testClaimsSet, "issuer", "keyId");
+
+        assertSame(firstSignedJWT.getHeader(), secondSignedJWT.getHeader());
+        assertEquals(EXPECTED_KID, secondSignedJWT.getHeader().getKeyID());
+        assertEquals(
+                firstSignedJWT.getHeader().toBase64URL(),
+                secondSignedJWT.getHeader().getParsedBase64URL());
+    }
+
+    @Test
+    void shouldSignEachClaimsSetInOrder()
+            throws JOSEException,
+                    InvalidKeySpecException,
+                    NoSuchAlgorithmException,
+                    ParseException {
+        signedJwtFactory = new SignedJWTFactory(new ECDSASigner(getPrivateKey()));
+
+        List<SignedJWT> signedJWTs =
+                signedJwtFactory.createSignedJwts(createClaimsSets(3), "issuer", "keyId");
+
+        assertEquals(3, signedJWTs.size());
+        for (int i = 0; i < signedJWTs.size(); i++) {
+            SignedJWT signedJWT = signedJWTs.get(i);
+            assertThat(signedJWT.verify(new ECDSAVerifier(ECKey.parse(EC_PUBLIC_JWK_1))), is(true));
+            assertEquals(EXPECTED_KID, signedJWT.getHeader().getKeyID());
+            assertEquals("subject-" + i, signedJWT.getJWTClaimsSet().getSubject());
+        }
+    }
+
+    @Test
+    void shouldLimitSigningRequestsInFlightWithAnAsyncSigner()
+            throws JOSEException,
+                    InvalidKeySpecException,
+                    NoSuchAlgorithmException,
+                    ParseException {
+        DelayedAsyncSigner asyncSigner = new DelayedAsyncSigner(new ECDSASigner(getPrivateKey()));
+        signedJwtFactory = new SignedJWTFactory(asyncSigner, 2);
+
+        List<SignedJWT> signedJWTs = signedJwtFactory.createSignedJwts(createClaimsSets(10));
+
+        assertEquals(10, signedJWTs.size());
+        for (int i = 0; i < signedJWTs.size(); i++) {
+            SignedJWT signedJWT = signedJWTs.get(i);
+            assertThat(signedJWT.verify(new ECDSAVerifier(ECKey.parse(EC_PUBLIC_JWK_1))), is(true));
+            assertEquals("subject-" + i, signedJWT.getJWTClaimsSet().getSubject());
+        }
+        assertThat(asyncSigner.maxInFlight.get(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    void shouldWrapAnAsyncSignerThatThrowsWithoutHoldingItsPermit() {
+        AsyncJWSSigner asyncSigner = mock(AsyncJWSSigner.class);
+        when(asyncSigner.signAsync(any(JWSHeader.class), any(byte[].class)))
+                .thenThrow(new IllegalStateException("KMS client could not be built"));
+        signedJwtFactory = new SignedJWTFactory(asyncSigner, 1);
+
+        for (int i = 0; i < 2; i++) {
+            JOSEException exception =
+                    assertThrows(
+                            JOSEException.class,
+                            () -> signedJwtFactory.createSignedJwts(createClaimsSets(3)));
+            assertEquals(
+                    "Failed to sign JWT: KMS client could not be built", exception.getMessage());
+        }
+    }
+
+    private List<JWTClaimsSet> createClaimsSets(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new JWTClaimsSet.Builder().subject("subject-" + i).build())
+                .toList();
+    }
+
     private ECPrivateKey getPrivateKey() throws InvalidKeySpecException, NoSuchAlgorithmException {
         return (ECPrivateKey)
                 KeyFactory.getInstance("EC")
@@ -120,4 +248,45 @@ class SignedJWTFactoryTest {
                                 new PKCS8EncodedKeySpec(
                                         Base64.getDecoder().decode(EC_PRIVATE_KEY_1)));
     }
+
+    private static final class DelayedAsyncSigner implements AsyncJWSSigner {
+        private final ECDSASigner signer;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private DelayedAsyncSigner(ECDSASigner signer) {
+            this.signer = signer;
+        }
+
+        @Override
+        public CompletableFuture<Base64URL> signAsync(JWSHeader header, byte[] signingInput) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            return signer.sign(header, signingInput);
+                        } catch (JOSEException e) {
+                            throw new CompletionException(e);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    },
+                    CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public Base64URL sign(JWSHeader header, byte[] signingInput) {
+            return signAsync(header, signingInput).join();
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return signer.supportedJWSAlgorithms();
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return signer.getJCAContext();
+        }
+    }
 }
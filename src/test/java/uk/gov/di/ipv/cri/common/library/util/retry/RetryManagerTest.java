@@ -2,12 +2,21 @@ package uk.gov.di.ipv.cri.common.library.util.retry;
 
 import org.junit.jupiter.api.Test;
 import uk.gov.di.ipv.cri.common.library.exception.AccessTokenExpiredException;
+import uk.gov.di.ipv.cri.common.library.exception.CircuitBreakerOpenException;
+import uk.gov.di.ipv.cri.common.library.util.EventProbe;
 
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 class RetryManagerTest {
 
@@ -88,4 +97,288 @@ class RetryManagerTest {
         assertEquals(3, attempts.get());
         assertTrue((System.currentTimeMillis() - start) >= expectedExponentiallyRetry);
     }
+
+    @Test
+    void shouldNotRetryWhenTheDeadlineWouldPassFirst() {
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(3)
+                        .delayBetweenAttempts(1000)
+                        .deadline(Instant.now().plusMillis(100))
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        Retryable<String> retryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("dummy exception");
+                };
+
+        assertThrows(IllegalStateException.class, () -> RetryManager.execute(config, retryable));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void shouldRetryAsynchronously() throws Exception {
+        String output = "Hello, World!";
+
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(3)
+                        .delayBetweenAttempts(10)
+                        .exponentiallyRetry(true)
+                        .jitter(RetryConfig.Jitter.FULL)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        AsyncRetryable<String> retryable =
+                () -> {
+                    if (attempts.getAndIncrement() < 2) {
+                        return CompletableFuture.failedFuture(new RuntimeException());
+                    }
+                    return CompletableFuture.completedFuture(output);
+                };
+
+        assertEquals(output, RetryManager.executeAsync(config, retryable).get());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void shouldFailAsynchronouslyWithTheLastException() {
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(2)
+                        .delayBetweenAttempts(10)
+                        .jitter(RetryConfig.Jitter.DECORRELATED)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        AsyncRetryable<String> retryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("dummy exception");
+                };
+
+        ExecutionException exception =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> RetryManager.executeAsync(config, retryable).get());
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void shouldFailFastOnceTheCircuitBreakerOpens() throws Exception {
+        EventProbe eventProbe = mock(EventProbe.class);
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(3)
+                        .delayBetweenAttempts(0)
+                        .dependency("breaker-test")
+                        .circuitBreaker(2, 100)
+                        .eventProbe(eventProbe)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean failing = new AtomicBoolean(true);
+
+        Retryable<String> retryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    if (failing.get()) {
+                        throw new IllegalStateException("dummy exception");
+                    }
+                    return "Hello, World!";
+                };
+
+        assertThrows(IllegalStateException.class, () -> RetryManager.execute(config, retryable));
+        assertEquals(2, attempts.get());
+        assertEquals(CircuitBreaker.State.OPEN, config.getCircuitBreaker().getState());
+        verify(eventProbe).counterMetric("breaker-test_circuit_breaker_opened");
+
+        assertThrows(
+                CircuitBreakerOpenException.class, () -> RetryManager.execute(config, retryable));
+        assertEquals(2, attempts.get());
+        verify(eventProbe).counterMetric("breaker-test_circuit_breaker_rejected");
+
+        Thread.sleep(150);
+        failing.set(false);
+
+        assertEquals("Hello, World!", RetryManager.execute(config, retryable));
+        assertEquals(CircuitBreaker.State.CLOSED, config.getCircuitBreaker().getState());
+        verify(eventProbe).counterMetric("breaker-test_circuit_breaker_closed");
+    }
+
+    @Test
+    void shouldFailAsynchronouslyWhenTheCircuitBreakerIsOpen() {
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(1)
+                        .dependency("async-breaker-test")
+                        .circuitBreaker(1, 60_000)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        AsyncRetryable<String> retryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    return CompletableFuture.failedFuture(new IllegalStateException());
+                };
+
+        assertThrows(
+                ExecutionException.class, () -> RetryManager.executeAsync(config, retryable).get());
+        ExecutionException exception =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> RetryManager.executeAsync(config, retryable).get());
+        assertInstanceOf(CircuitBreakerOpenException.class, exception.getCause());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void shouldOpenTheCircuitBreakerAgainWhenTheTrialThrowsAnError() throws Exception {
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(1)
+                        .dependency("error-breaker-test")
+                        .circuitBreaker(1, 50)
+                        .build();
+
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        RetryManager.execute(
+                                config,
+                                () -> {
+                                    throw new IllegalStateException("dummy exception");
+                                }));
+        Thread.sleep(100);
+        assertThrows(
+                AssertionError.class,
+                () ->
+                        RetryManager.execute(
+                                config,
+                                () -> {
+                                    throw new AssertionError("dummy error");
+                                }));
+
+        assertEquals(CircuitBreaker.State.OPEN, config.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void shouldAllowAnotherTrialWhenTheFirstNeverCompletes() throws Exception {
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(1)
+                        .dependency("stuck-breaker-test")
+                        .circuitBreaker(1, 50)
+                        .build();
+        RetryManager.executeAsync(
+                config, () -> CompletableFuture.failedFuture(new IllegalStateException()));
+        Thread.sleep(100);
+
+        RetryManager.executeAsync(config, CompletableFuture::new);
+        ExecutionException exception =
+                assertThrows(
+                        ExecutionException.class,
+                        () ->
+                                RetryManager.executeAsync(
+                                                config,
+                                                () -> CompletableFuture.completedFuture("trial"))
+                                        .get());
+        assertInstanceOf(CircuitBreakerOpenException.class, exception.getCause());
+        Thread.sleep(100);
+
+        assertEquals(
+                "trial",
+                RetryManager.executeAsync(config, () -> CompletableFuture.completedFuture("trial"))
+                        .get());
+        assertEquals(CircuitBreaker.State.CLOSED, config.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void shouldShareTheRetryBudgetBetweenCallers() {
+        EventProbe eventProbe = mock(EventProbe.class);
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(3)
+                        .delayBetweenAttempts(0)
+                        .dependency("budget-test")
+                        .retryBudget(3, 0.1)
+                        .eventProbe(eventProbe)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        Retryable<String> retryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("dummy exception");
+                };
+
+        assertThrows(IllegalStateException.class, () -> RetryManager.execute(config, retryable));
+        assertEquals(3, attempts.get());
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        RetryManager.execute(
+                                new RetryConfig.Builder()
+                                        .maxAttempts(3)
+                                        .delayBetweenAttempts(0)
+                                        .dependency("budget-test")
+                                        .retryBudget(3, 0.1)
+                                        .eventProbe(eventProbe)
+                                        .build(),
+                                retryable));
+        assertEquals(5, attempts.get());
+        verify(eventProbe).counterMetric("budget-test_retry_budget_exhausted");
+    }
+
+    @Test
+    void shouldNotRefillTheRetryBudgetWhenTheAbortConditionMatches() {
+        EventProbe eventProbe = mock(EventProbe.class);
+        RetryConfig config =
+                new RetryConfig.Builder()
+                        .maxAttempts(2)
+                        .delayBetweenAttempts(0)
+                        .abortOn(AccessTokenExpiredException.class::isInstance)
+                        .dependency("abort-budget-test")
+                        .retryBudget(1, 1)
+                        .eventProbe(eventProbe)
+                        .build();
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        Retryable<String> failingRetryable =
+                () -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("dummy exception");
+                };
+        Retryable<String> abortingRetryable =
+                () -> {
+                    throw new AccessTokenExpiredException("dummy exception");
+                };
+
+        assertThrows(
+                IllegalStateException.class, () -> RetryManager.execute(config, failingRetryable));
+        assertEquals(2, attempts.get());
+        assertThrows(
+                AccessTokenExpiredException.class,
+                () -> RetryManager.execute(config, abortingRetryable));
+        assertThrows(
+                IllegalStateException.class, () -> RetryManager.execute(config, failingRetryable));
+        assertEquals(3, attempts.get());
+        verify(eventProbe).counterMetric("abort-budget-test_retry_budget_exhausted");
+    }
+
+    @Test
+    void shouldRequireADependencyNameForACircuitBreaker() {
+        RetryConfig.Builder builder = new RetryConfig.Builder().circuitBreaker(1, 1000);
+
+        assertThrows(IllegalStateException.class, builder::build);
+    }
 }